@@ -0,0 +1,76 @@
+package edu.mcw.scge.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic clustered unit vectors, a stand-in for chunk embeddings.
+ * <p>
+ * Real embeddings are far from uniform: chunks of one trial, or of one kind of section, sit close
+ * together. Vectors are drawn around a fixed set of random centroids with Gaussian noise and
+ * normalized, so ANN indexes see the same kind of dense neighborhoods. The same seed always gives
+ * the same sequence, which lets a larger run extend the table of a smaller one.
+ */
+class SyntheticVectors {
+
+    private final int dimensions;
+    private final double noise;
+    private final float[][] centroids;
+    private final SplittableRandom random;
+
+    SyntheticVectors(int dimensions, int clusters, double noise, long seed) {
+        this.dimensions = dimensions;
+        this.noise = noise;
+        this.random = new SplittableRandom(seed);
+
+        SplittableRandom centroidRandom = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        this.centroids = new float[clusters][];
+        for (int c = 0; c < clusters; c++) {
+            float[] centroid = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                centroid[i] = (float) centroidRandom.nextGaussian();
+            }
+            centroids[c] = normalize(centroid);
+        }
+    }
+
+    /**
+     * A generator over the same centroids with its own sequence (e.g. for queries)
+     */
+    SyntheticVectors withSeed(long seed) {
+        return new SyntheticVectors(this, seed);
+    }
+
+    private SyntheticVectors(SyntheticVectors source, long seed) {
+        this.dimensions = source.dimensions;
+        this.noise = source.noise;
+        this.centroids = source.centroids;
+        this.random = new SplittableRandom(seed);
+    }
+
+    float[] next() {
+        float[] centroid = centroids[random.nextInt(centroids.length)];
+        float[] vector = new float[dimensions];
+        // Noise per dimension scaled so the offset from the centroid has length ~noise
+        double scale = noise / Math.sqrt(dimensions);
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = centroid[i] + (float) (random.nextGaussian() * scale);
+        }
+        return normalize(vector);
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inverse;
+        }
+        return vector;
+    }
+}
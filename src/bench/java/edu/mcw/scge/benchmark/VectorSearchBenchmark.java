@@ -0,0 +1,393 @@
+package edu.mcw.scge.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.pgvector.PGvector;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Recall, latency and throughput of pgvector nearest-neighbor search at a given corpus size and
+ * index configuration, on synthetic clustered vectors in a scratch table.
+ * <p>
+ * For every corpus size the table is extended to that many rows, exact top-k results are computed
+ * by sequential scan as ground truth, and then every index configuration is built in turn and
+ * queried at every search setting (hnsw.ef_search or ivfflat.probes) and client count. Queries use
+ * the same cosine-distance ORDER BY ... LIMIT shape as DocumentEmbeddingOpenAIRepository.
+ * <p>
+ * Run against a local pgvector instance, never the pipeline database:
+ * <pre>
+ *   ./gradlew vectorBenchmark -PbenchmarkArgs="--url=jdbc:postgresql://localhost/bench --rows=100000,1000000"
+ * </pre>
+ * Options (defaults in brackets): url, user [postgres], password, table [vector_benchmark],
+ * rows [100000], dimensions [1536], clusters [1000], noise [0.5], queries [200], k [10],
+ * clients [1,8], indexes [hnsw:m=16:ef_construction=64;ivfflat:lists=1000], ef-search [40,100,200],
+ * probes [1,10,40], maintenance-work-mem [1GB], seed [42], out [build/benchmark/vector-search.json].
+ * Results from all runs are written to the out file as JSON.
+ */
+public class VectorSearchBenchmark {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    // Binary COPY framing, see https://www.postgresql.org/docs/current/sql-copy.html
+    private static final byte[] COPY_SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int COPY_BUFFER_BYTES = 1 << 20;
+
+    private final Map<String, String> options;
+    private final String table;
+    private final int dimensions;
+    private final int k;
+
+    private VectorSearchBenchmark(Map<String, String> options) {
+        this.options = options;
+        this.table = option("table", "vector_benchmark");
+        this.dimensions = Integer.parseInt(option("dimensions", "1536"));
+        this.k = Integer.parseInt(option("k", "10"));
+        if (!table.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid table name: " + table);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new VectorSearchBenchmark(options).run();
+    }
+
+    private void run() throws Exception {
+        int[] rowCounts = ints(option("rows", "100000"));
+        Arrays.sort(rowCounts);
+        int[] clientCounts = ints(option("clients", "1,8"));
+        List<IndexConfig> indexes = IndexConfig.parseAll(option("indexes", "hnsw:m=16:ef_construction=64;ivfflat:lists=1000"));
+
+        SyntheticVectors corpus = new SyntheticVectors(dimensions, Integer.parseInt(option("clusters", "1000")),
+                Double.parseDouble(option("noise", "0.5")), Long.parseLong(option("seed", "42")));
+        List<float[]> queries = new ArrayList<>();
+        SyntheticVectors queryVectors = corpus.withSeed(Long.parseLong(option("seed", "42")) + 1);
+        for (int i = Integer.parseInt(option("queries", "200")); i > 0; i--) {
+            queries.add(queryVectors.next());
+        }
+
+        Report report;
+        try (Connection connection = connect()) {
+            report = new Report(Instant.now().toString(), serverVersion(connection), dimensions,
+                    Integer.parseInt(option("clusters", "1000")), queries.size(), k, new ArrayList<>());
+            createTable(connection);
+
+            long loaded = 0;
+            for (int rows : rowCounts) {
+                dropIndexes(connection);
+                long loadStart = System.nanoTime();
+                loaded += load(connection, corpus, rows - loaded);
+                double loadSeconds = seconds(System.nanoTime() - loadStart);
+                execute(connection, "VACUUM ANALYZE " + table);
+                log("%,d rows loaded in %.1fs", loaded, loadSeconds);
+
+                long truthStart = System.nanoTime();
+                List<Set<Long>> truth = groundTruth(connection, queries);
+                log("Ground truth for %d queries in %.1fs", queries.size(), seconds(System.nanoTime() - truthStart));
+
+                for (IndexConfig index : indexes) {
+                    dropIndexes(connection);
+                    execute(connection, "SET maintenance_work_mem = '" + option("maintenance-work-mem", "1GB") + "'");
+                    long buildStart = System.nanoTime();
+                    execute(connection, index.createSql(table));
+                    double buildSeconds = seconds(System.nanoTime() - buildStart);
+                    long indexBytes = indexBytes(connection);
+                    log("%s built in %.1fs (%,d MB)", index, buildSeconds, indexBytes >> 20);
+
+                    // One untimed pass to bring the index into shared buffers
+                    measure(index.searchSettingSql(index.searchSettings(options)[0]), queries, truth, 1);
+
+                    for (int setting : index.searchSettings(options)) {
+                        for (int clients : clientCounts) {
+                            Measurement m = measure(index.searchSettingSql(setting), queries, truth, clients);
+                            log("  %s=%d clients=%d recall@%d=%.3f p50=%.2fms p99=%.2fms qps=%.0f",
+                                    index.searchSetting(), setting, clients, k, m.recall(), m.p50Ms(), m.p99Ms(), m.qps());
+                            report.runs().add(new Run(rows, loadSeconds, index.type(), index.params(), buildSeconds,
+                                    indexBytes, Map.of(index.searchSetting(), setting), clients,
+                                    m.recall(), m.p50Ms(), m.p99Ms(), m.qps()));
+                        }
+                    }
+                }
+            }
+            dropIndexes(connection);
+        }
+
+        Path out = Path.of(option("out", "build/benchmark/vector-search.json"));
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            GSON.toJson(report, writer);
+        }
+        log("Results written to %s", out.toAbsolutePath());
+    }
+
+    private void createTable(Connection connection) throws SQLException {
+        execute(connection, "CREATE EXTENSION IF NOT EXISTS vector");
+        execute(connection, "DROP TABLE IF EXISTS " + table);
+        execute(connection, "CREATE TABLE " + table + " (id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY, " +
+                "embedding vector(" + dimensions + ") NOT NULL)");
+    }
+
+    /**
+     * Append rows from the generator by binary COPY; pgvector's binary form is dim, unused, float4s
+     */
+    private long load(Connection connection, SyntheticVectors corpus, long rows) throws SQLException {
+        if (rows <= 0) {
+            return 0;
+        }
+        int tupleBytes = 2 + 4 + 4 + 4 * dimensions;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(COPY_BUFFER_BYTES, tupleBytes + COPY_SIGNATURE.length + 8));
+
+        CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn("COPY " + table + " (embedding) FROM STDIN (FORMAT binary)");
+        try {
+            buffer.put(COPY_SIGNATURE).putInt(0).putInt(0);
+            for (long row = 0; row < rows; row++) {
+                if (buffer.remaining() < tupleBytes + 2) {
+                    flush(copy, buffer);
+                }
+                float[] vector = corpus.next();
+                buffer.putShort((short) 1).putInt(4 + 4 * dimensions);
+                buffer.putShort((short) dimensions).putShort((short) 0);
+                for (float value : vector) {
+                    buffer.putFloat(value);
+                }
+            }
+            buffer.putShort((short) -1);
+            flush(copy, buffer);
+            return copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    private static void flush(CopyIn copy, ByteBuffer buffer) throws SQLException {
+        copy.writeToCopy(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    private List<Set<Long>> groundTruth(Connection connection, List<float[]> queries) throws SQLException {
+        List<Set<Long>> truth = new ArrayList<>(queries.size());
+        try (PreparedStatement ps = connection.prepareStatement(searchSql())) {
+            for (float[] query : queries) {
+                truth.add(new HashSet<>(search(ps, query)));
+            }
+        }
+        return truth;
+    }
+
+    /**
+     * Run every query on each of the given number of connections at once
+     */
+    private Measurement measure(String settingSql, List<float[]> queries, List<Set<Long>> truth, int clients)
+            throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            long[] found = new long[clients];
+            long start = System.nanoTime();
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                futures.add(pool.submit(() -> {
+                    long[] nanos = new long[queries.size()];
+                    try (Connection connection = connect();
+                         PreparedStatement ps = connection.prepareStatement(searchSql())) {
+                        execute(connection, settingSql);
+                        for (int n = 0; n < queries.size(); n++) {
+                            // Clients start at different queries so they do not move in lock step
+                            int i = (n + client * queries.size() / clients) % queries.size();
+                            long queryStart = System.nanoTime();
+                            List<Long> ids = search(ps, queries.get(i));
+                            nanos[n] = System.nanoTime() - queryStart;
+                            found[client] += ids.stream().filter(truth.get(i)::contains).count();
+                        }
+                    }
+                    return nanos;
+                }));
+            }
+
+            List<Long> latencies = new ArrayList<>();
+            for (Future<long[]> future : futures) {
+                for (long nanos : future.get()) {
+                    latencies.add(nanos);
+                }
+            }
+            double wallSeconds = seconds(System.nanoTime() - start);
+
+            long expected = clients * (long) truth.stream().mapToInt(Set::size).sum();
+            long hits = Arrays.stream(found).sum();
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            return new Measurement(expected == 0 ? 1.0 : (double) hits / expected,
+                    percentile(sorted, 50) / 1_000_000.0, percentile(sorted, 99) / 1_000_000.0,
+                    sorted.length / wallSeconds);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private String searchSql() {
+        return "SELECT id FROM " + table + " ORDER BY embedding <=> ? LIMIT " + k;
+    }
+
+    private static List<Long> search(PreparedStatement ps, float[] query) throws SQLException {
+        ps.setObject(1, new PGvector(query));
+        List<Long> ids = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        return ids;
+    }
+
+    private void dropIndexes(Connection connection) throws SQLException {
+        execute(connection, "DROP INDEX IF EXISTS " + table + "_embedding_idx");
+    }
+
+    private long indexBytes(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT pg_relation_size('" + table + "_embedding_idx')")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static String serverVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT current_setting('server_version') || ' / pgvector ' || " +
+                     "COALESCE((SELECT extversion FROM pg_extension WHERE extname = 'vector'), 'not installed')")) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        String url = options.get("url");
+        if (url == null) {
+            throw new IllegalArgumentException("--url=jdbc:postgresql://host/db is required");
+        }
+        Connection connection = DriverManager.getConnection(url, option("user", "postgres"), option("password", ""));
+        PGvector.addVectorType(connection);
+        return connection;
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static int[] ints(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+
+    private static void log(String format, Object... args) {
+        System.out.println(Instant.now() + " " + String.format(format, args));
+    }
+
+    /**
+     * One index to build, from "hnsw:m=16:ef_construction=64" or "ivfflat:lists=1000"
+     */
+    record IndexConfig(String type, Map<String, Integer> params) {
+
+        static List<IndexConfig> parseAll(String specs) {
+            List<IndexConfig> configs = new ArrayList<>();
+            for (String spec : specs.split(";")) {
+                String[] parts = spec.trim().split(":");
+                if (!parts[0].equals("hnsw") && !parts[0].equals("ivfflat")) {
+                    throw new IllegalArgumentException("Unknown index type " + parts[0] + " (hnsw or ivfflat)");
+                }
+                Map<String, Integer> params = new LinkedHashMap<>();
+                for (int i = 1; i < parts.length; i++) {
+                    String[] param = parts[i].split("=");
+                    params.put(param[0], Integer.parseInt(param[1]));
+                }
+                configs.add(new IndexConfig(parts[0], params));
+            }
+            return configs;
+        }
+
+        String createSql(String table) {
+            StringBuilder with = new StringBuilder();
+            params.forEach((name, value) -> with.append(with.length() == 0 ? "" : ", ").append(name).append(" = ").append(value));
+            return "CREATE INDEX " + table + "_embedding_idx ON " + table + " USING " + type +
+                    " (embedding vector_cosine_ops)" + (with.length() > 0 ? " WITH (" + with + ")" : "");
+        }
+
+        String searchSetting() {
+            return type.equals("hnsw") ? "hnsw.ef_search" : "ivfflat.probes";
+        }
+
+        int[] searchSettings(Map<String, String> options) {
+            return type.equals("hnsw")
+                    ? ints(options.getOrDefault("ef-search", "40,100,200"))
+                    : ints(options.getOrDefault("probes", "1,10,40"));
+        }
+
+        String searchSettingSql(int value) {
+            return "SET " + searchSetting() + " = " + value;
+        }
+
+        @Override
+        public String toString() {
+            return type + params;
+        }
+    }
+
+    record Measurement(double recall, double p50Ms, double p99Ms, double qps) {
+    }
+
+    record Run(int rows, double loadSeconds, String index, Map<String, Integer> indexParams, double buildSeconds,
+               long indexBytes, Map<String, Integer> searchSetting, int clients,
+               double recall, double p50Ms, double p99Ms, double qps) {
+    }
+
+    record Report(String startedAt, String server, int dimensions, int clusters, int queries, int k, List<Run> runs) {
+    }
+}
@@ -3,6 +3,25 @@
 # Clinical Trials RAG Load Pipeline
 # Updates clinical trial embeddings in vector database
 #
+# Usage: run.sh [--pipeline.mode=load|load-db|replay|enqueue|worker|reembed|search-benchmark|daemon|export|import|crawl|trial-vectors]
+#   load     fetch and embed every trial in one process (default)
+#   load-db  like load, but render the trial text from the curation database's report views
+#            (ct_report_trial/field/link) instead of fetching pages; --pipeline.curation.batch-size=N
+#   replay   rebuild trials from the HTML snapshot archive (--pipeline.archive.dir=...)
+#   enqueue  publish NCT IDs to the trial_work_queue table
+#   worker   claim trials from trial_work_queue; run on as many hosts as needed
+#   reembed  re-embed all chunks at --pipeline.embedding.dimensions=N, then swap to the new vectors
+#   search-benchmark  recall/latency of binary-quantized search vs the exact query
+#   daemon   stay running; full refresh on --pipeline.daemon.cron, single trials on NOTIFY trial_changes
+#            (start it directly with bin/$APPNAME, not through this script; stop with SIGTERM)
+#   export   write trials and chunks to --pipeline.snapshot.dir=... (binary COPY, zstd)
+#   import   load a snapshot into an empty corpus (or --pipeline.snapshot.replace=true), then build indexes
+#   crawl    embed the generic pages from --pipeline.crawl.sitemaps=... and/or --pipeline.crawl.seeds=...
+#   trial-vectors  recompute the per-trial mean vectors and their index (hierarchical search)
+#
+# Any mode: --pipeline.jfr.file=path.jfr records the run with JFR (allocation sampling plus per-trial
+# and per-stage ingest events) and writes the recording when the run ends
+#
 . /etc/profile
 
 APPNAME="clinical-trials-rag-load-pipeline"
@@ -1,9 +1,19 @@
 package edu.mcw.scge;
 
+import edu.mcw.scge.controller.CorpusSnapshot;
+import edu.mcw.scge.controller.CurationDatabaseLoader;
+import edu.mcw.scge.controller.DistributedIngestWorker;
+import edu.mcw.scge.controller.EmbeddingMigration;
+import edu.mcw.scge.controller.QuantizedSearchBenchmark;
+import edu.mcw.scge.controller.RefreshDaemon;
+import edu.mcw.scge.controller.SiteCrawler;
 import edu.mcw.scge.controller.UrlController;
+import edu.mcw.scge.profiling.FlightRecording;
+import edu.mcw.scge.service.TrialRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.WebApplicationType;
@@ -16,6 +26,36 @@ public class ClinicalTrialsUpdatePipeline implements CommandLineRunner {
     @Autowired
     private UrlController urlController;
 
+    @Autowired
+    private DistributedIngestWorker distributedIngestWorker;
+
+    @Autowired
+    private EmbeddingMigration embeddingMigration;
+
+    @Autowired
+    private QuantizedSearchBenchmark quantizedSearchBenchmark;
+
+    @Autowired
+    private RefreshDaemon refreshDaemon;
+
+    @Autowired
+    private CorpusSnapshot corpusSnapshot;
+
+    @Autowired
+    private SiteCrawler siteCrawler;
+
+    @Autowired
+    private CurationDatabaseLoader curationDatabaseLoader;
+
+    @Autowired
+    private FlightRecording flightRecording;
+
+    @Autowired
+    private TrialRegistry trialRegistry;
+
+    @Value("${pipeline.mode:load}")
+    private String mode;
+
     public static void main(String[] args) {
         LOG.info("=== Clinical Trials Update Pipeline Starting ===");
         SpringApplication app = new SpringApplication(ClinicalTrialsUpdatePipeline.class);
@@ -26,11 +66,63 @@ public class ClinicalTrialsUpdatePipeline implements CommandLineRunner {
     @Override
     public void run(String... args) throws Exception {
         try {
-            LOG.info("Starting clinical trials update process...");
+            LOG.info("Starting clinical trials update process (mode: {})...", mode);
             long startTime = System.currentTimeMillis();
+            // JFR recording of the run when pipeline.jfr.file is set, written out in the finally block
+            flightRecording.start();
 
-            // Run the clinical trials loading process
-            urlController.loadClinicalTrials();
+            switch (mode) {
+                case "load":
+                    // Run the clinical trials loading process
+                    urlController.loadClinicalTrials();
+                    break;
+                case "load-db":
+                    // Render trials from the curation database's report views, no page fetches
+                    curationDatabaseLoader.load();
+                    break;
+                case "replay":
+                    // Rebuild chunks from the HTML snapshot archive, no page fetches
+                    urlController.replayClinicalTrials();
+                    break;
+                case "enqueue":
+                    // Publish NCT IDs to the shared work queue for distributed workers
+                    distributedIngestWorker.enqueueAll();
+                    break;
+                case "worker":
+                    // Claim and process trials from the shared work queue until it is drained
+                    distributedIngestWorker.work();
+                    break;
+                case "reembed":
+                    // Re-embed the corpus at the embedding model's dimensions (pipeline.embedding.dimensions when set) and cut over to the new vectors
+                    embeddingMigration.migrate();
+                    break;
+                case "search-benchmark":
+                    // Recall and latency of quantized two-phase search against the exact query
+                    quantizedSearchBenchmark.run();
+                    break;
+                case "daemon":
+                    // Stay up and refresh on the internal schedule and on change notifications until SIGTERM
+                    refreshDaemon.run();
+                    break;
+                case "export":
+                    // Write trials and chunks to a compressed binary snapshot in pipeline.snapshot.dir
+                    corpusSnapshot.exportSnapshot();
+                    break;
+                case "import":
+                    // Replace trials and chunks with the snapshot in pipeline.snapshot.dir, then rebuild indexes
+                    corpusSnapshot.importSnapshot();
+                    break;
+                case "crawl":
+                    // Fetch and embed the generic pages listed in pipeline.crawl.sitemaps / seeds
+                    siteCrawler.crawl();
+                    break;
+                case "trial-vectors":
+                    // Recompute every trial vector and the trial-level index for hierarchical search
+                    trialRegistry.rebuildTrialVectors();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown pipeline.mode: " + mode);
+            }
 
             long endTime = System.currentTimeMillis();
             long elapsedSeconds = (endTime - startTime) / 1000;
@@ -43,6 +135,8 @@ public class ClinicalTrialsUpdatePipeline implements CommandLineRunner {
         } catch (Exception e) {
             LOG.error("=== Clinical Trials Update Pipeline FAILED ===", e);
             throw e; // Re-throw to set proper exit code
+        } finally {
+            flightRecording.stop();
         }
     }
 }
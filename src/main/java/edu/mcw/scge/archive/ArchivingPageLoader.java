@@ -0,0 +1,39 @@
+package edu.mcw.scge.archive;
+
+import edu.mcw.scge.profiling.IngestEvents;
+import edu.mcw.scge.profiling.IngestStageEvent;
+import edu.mcw.scge.reader.HttpPageFetcher;
+import edu.mcw.scge.reader.PageLoader;
+import edu.mcw.scge.reader.RawPage;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Fetches pages over HTTP and keeps a copy of every trial report body in the snapshot archive
+ */
+public class ArchivingPageLoader implements PageLoader {
+    private final HttpPageFetcher fetcher;
+    private final HtmlSnapshotArchive archive;
+
+    public ArchivingPageLoader(HttpPageFetcher fetcher, HtmlSnapshotArchive archive) {
+        this.fetcher = fetcher;
+        this.archive = archive;
+    }
+
+    @Override
+    public Document load(String url) throws IOException {
+        RawPage page = fetcher.fetch(url);
+        String key = HtmlSnapshotArchive.keyFor(url);
+        if (key != null) {
+            archive.store(key, page.url(), page.charset(), page.body());
+        }
+
+        IngestStageEvent parse = IngestEvents.stage(IngestEvents.PARSE);
+        Document document = Jsoup.parse(new ByteArrayInputStream(page.body()), page.charset(), page.url());
+        parse.end(page.body().length, -1, -1);
+        return document;
+    }
+}
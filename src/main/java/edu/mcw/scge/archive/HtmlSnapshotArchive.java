@@ -0,0 +1,197 @@
+package edu.mcw.scge.archive;
+
+import edu.mcw.scge.reader.UrlDocumentReader;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed archive of raw HTML pages.
+ * <p>
+ * Layout under the archive root:
+ * <pre>
+ *   objects/ab/abcdef...html.zst   zstd-compressed page body, named by the SHA-256 of the body
+ *   index/NCT01234567.tsv          one line per fetch: fetched-at, sha256, charset, url
+ * </pre>
+ * Identical pages are stored once no matter how many times or under how many keys they are
+ * fetched; the per-key index keeps the fetch history so the latest snapshot can be replayed.
+ * Only trial report pages are archived, since every key is replayed as a trial.
+ */
+public class HtmlSnapshotArchive {
+    private static final Logger LOG = LoggerFactory.getLogger(HtmlSnapshotArchive.class);
+
+    private static final String OBJECT_SUFFIX = ".html.zst";
+    private static final String INDEX_SUFFIX = ".tsv";
+    private static final String NO_CHARSET = "-";
+
+    private final Path objectsDir;
+    private final Path indexDir;
+    private final int compressionLevel;
+
+    public HtmlSnapshotArchive(Path root, int compressionLevel) {
+        this.objectsDir = root.resolve("objects");
+        this.indexDir = root.resolve("index");
+        this.compressionLevel = compressionLevel;
+        try {
+            Files.createDirectories(objectsDir);
+            Files.createDirectories(indexDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create snapshot archive at " + root, e);
+        }
+        LOG.info("Using HTML snapshot archive at {} (zstd level {})", root, compressionLevel);
+    }
+
+    /**
+     * Archive key for a trial report URL: its last path segment, the NCT ID
+     *
+     * @return null for any other URL, which is not archived
+     */
+    public static String keyFor(String url) {
+        if (!UrlDocumentReader.isClinicalTrialUrl(url)) {
+            return null;
+        }
+        String path = url;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        String key = path.substring(path.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+        return key.isEmpty() ? "_root" : key;
+    }
+
+    /**
+     * Store a page body under the given key and return its snapshot entry
+     */
+    public Snapshot store(String key, String url, String charset, byte[] body) throws IOException {
+        String sha256 = sha256(body);
+        Path object = objectPath(sha256);
+
+        if (Files.notExists(object)) {
+            writeObject(object, body);
+            LOG.debug("Archived new snapshot {} ({} bytes) for {}", sha256, body.length, key);
+        } else {
+            LOG.debug("Snapshot {} already archived, indexing it for {}", sha256, key);
+        }
+
+        Snapshot snapshot = new Snapshot(key, sha256, url, charset, Instant.now());
+        String line = snapshot.fetchedAt() + "\t" + sha256 + "\t" +
+                (charset == null ? NO_CHARSET : charset) + "\t" + url + "\n";
+        Files.writeString(indexPath(key), line, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return snapshot;
+    }
+
+    /**
+     * Most recent snapshot recorded for a key
+     */
+    public Snapshot latest(String key) throws IOException {
+        Path index = indexPath(key);
+        if (Files.notExists(index)) {
+            throw new FileNotFoundException("No archived snapshot for " + key);
+        }
+
+        List<String> lines = Files.readAllLines(index, StandardCharsets.UTF_8);
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            String[] fields = lines.get(i).split("\t", 4);
+            if (fields.length == 4) {
+                String charset = NO_CHARSET.equals(fields[2]) ? null : fields[2];
+                return new Snapshot(key, fields[1], fields[3], charset, Instant.parse(fields[0]));
+            }
+        }
+        throw new FileNotFoundException("Empty snapshot index for " + key);
+    }
+
+    /**
+     * Open the decompressed body of a snapshot
+     */
+    public InputStream open(Snapshot snapshot) throws IOException {
+        Path object = objectPath(snapshot.sha256());
+        return new ZstdInputStream(new BufferedInputStream(Files.newInputStream(object)));
+    }
+
+    /**
+     * All keys that have at least one archived snapshot, in name order
+     */
+    public List<String> keys() throws IOException {
+        List<String> keys = new ArrayList<>();
+        try (Stream<Path> files = Files.list(indexDir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(INDEX_SUFFIX))
+                    .sorted()
+                    .forEach(name -> keys.add(name.substring(0, name.length() - INDEX_SUFFIX.length())));
+        }
+        return keys;
+    }
+
+    private void writeObject(Path object, byte[] body) throws IOException {
+        Files.createDirectories(object.getParent());
+        Path tmp = Files.createTempFile(object.getParent(), "snapshot", ".tmp");
+        try {
+            try (OutputStream out = new ZstdOutputStream(Files.newOutputStream(tmp), compressionLevel)) {
+                out.write(body);
+            }
+            moveIntoPlace(tmp, object);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void moveIntoPlace(Path tmp, Path object) throws IOException {
+        try {
+            Files.move(tmp, object, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Another writer stored the same content first
+        } catch (AtomicMoveNotSupportedException e) {
+            if (Files.notExists(object)) {
+                Files.move(tmp, object);
+            }
+        }
+    }
+
+    private Path objectPath(String sha256) {
+        return objectsDir.resolve(sha256.substring(0, 2)).resolve(sha256 + OBJECT_SUFFIX);
+    }
+
+    private Path indexPath(String key) {
+        return indexDir.resolve(key + INDEX_SUFFIX);
+    }
+
+    static String sha256(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * One archived fetch of a page
+     */
+    public record Snapshot(String key, String sha256, String url, String charset, Instant fetchedAt) {
+    }
+}
@@ -0,0 +1,38 @@
+package edu.mcw.scge.archive;
+
+import edu.mcw.scge.profiling.IngestEvents;
+import edu.mcw.scge.profiling.IngestStageEvent;
+import edu.mcw.scge.reader.PageLoader;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replays the latest archived snapshot of a page instead of fetching it
+ */
+public class SnapshotPageLoader implements PageLoader {
+    private final HtmlSnapshotArchive archive;
+
+    public SnapshotPageLoader(HtmlSnapshotArchive archive) {
+        this.archive = archive;
+    }
+
+    @Override
+    public Document load(String url) throws IOException {
+        String key = HtmlSnapshotArchive.keyFor(url);
+        if (key == null) {
+            throw new FileNotFoundException("Only trial report pages are archived: " + url);
+        }
+        HtmlSnapshotArchive.Snapshot snapshot = archive.latest(key);
+        // Decompressing the snapshot is part of the parse stage; there is no fetch
+        IngestStageEvent parse = IngestEvents.stage(IngestEvents.PARSE);
+        try (InputStream body = archive.open(snapshot)) {
+            Document document = Jsoup.parse(body, snapshot.charset(), snapshot.url());
+            parse.end(-1, -1, -1);
+            return document;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package edu.mcw.scge.config;
+
+import edu.mcw.scge.archive.ArchivingPageLoader;
+import edu.mcw.scge.archive.HtmlSnapshotArchive;
+import edu.mcw.scge.archive.SnapshotPageLoader;
+import edu.mcw.scge.reader.HttpPageFetcher;
+import edu.mcw.scge.reader.PageLoader;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Path;
+
+@Configuration
+public class ArchiveConfig {
+
+    @Value("${pipeline.mode:load}")
+    private String mode;
+
+    @Bean
+    @ConditionalOnProperty(name = "pipeline.archive.dir")
+    HtmlSnapshotArchive htmlSnapshotArchive(@Value("${pipeline.archive.dir}") String archiveDir,
+                                            @Value("${pipeline.archive.compression-level:3}") int compressionLevel) {
+        return new HtmlSnapshotArchive(Path.of(archiveDir), compressionLevel);
+    }
+
+    /**
+     * Page source for the pipeline: live fetches, live fetches recorded into the archive,
+     * or archive replay with no network access
+     */
+    @Bean
+    @Primary
+    PageLoader pageLoader(HttpPageFetcher httpPageFetcher, ObjectProvider<HtmlSnapshotArchive> archiveProvider) {
+        HtmlSnapshotArchive archive = archiveProvider.getIfAvailable();
+
+        if ("replay".equals(mode)) {
+            if (archive == null) {
+                throw new IllegalStateException("Replay mode requires pipeline.archive.dir");
+            }
+            return new SnapshotPageLoader(archive);
+        }
+        return archive != null ? new ArchivingPageLoader(httpPageFetcher, archive) : httpPageFetcher;
+    }
+}
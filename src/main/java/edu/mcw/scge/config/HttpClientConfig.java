@@ -0,0 +1,61 @@
+package edu.mcw.scge.config;
+
+import edu.mcw.scge.reader.HttpPageFetcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+@Configuration
+public class HttpClientConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClientConfig.class);
+
+    @Value("${pipeline.http.version:HTTP_2}")
+    private HttpClient.Version version;
+
+    @Value("${pipeline.http.connect-timeout-ms:10000}")
+    private long connectTimeoutMs;
+
+    @Value("${pipeline.http.request-timeout-ms:30000}")
+    private long requestTimeoutMs;
+
+    @Value("${pipeline.http.keep-alive-seconds:300}")
+    private int keepAliveSeconds;
+
+    @Value("${pipeline.http.max-pooled-connections:16}")
+    private int maxPooledConnections;
+
+    @Value("${pipeline.http.user-agent:clinical-trials-rag-load-pipeline/1.0}")
+    private String userAgent;
+
+    @Bean
+    HttpClient pipelineHttpClient() {
+        // The JDK connection pool reads these once, when the first client is built
+        setIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(keepAliveSeconds));
+        setIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(maxPooledConnections));
+
+        LOG.info("Creating shared HTTP client - version: {}, connect timeout: {}ms, keep-alive: {}s, pool size: {}",
+                version, connectTimeoutMs, keepAliveSeconds, maxPooledConnections);
+
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Bean
+    HttpPageFetcher httpPageFetcher(HttpClient pipelineHttpClient) {
+        return new HttpPageFetcher(pipelineHttpClient, Duration.ofMillis(requestTimeoutMs), userAgent);
+    }
+
+    private static void setIfAbsent(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package edu.mcw.scge.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import jakarta.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Applies the idempotent DDL scripts in classpath:schema/ (in file name order) at startup
+ */
+@Configuration
+public class SchemaConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaConfig.class);
+
+    private final DataSource dataSource;
+
+    @Value("${pipeline.schema.init:true}")
+    private boolean initSchema;
+
+    public SchemaConfig(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    public void applySchema() throws IOException {
+        if (!initSchema) {
+            LOG.info("Schema initialization disabled (pipeline.schema.init=false)");
+            return;
+        }
+
+        Resource[] scripts = new PathMatchingResourcePatternResolver().getResources("classpath:schema/*.sql");
+        Arrays.sort(scripts, Comparator.comparing(Resource::getFilename));
+
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(scripts);
+        populator.setContinueOnError(false);
+        DatabasePopulatorUtils.execute(populator, dataSource);
+
+        LOG.info("Applied {} schema scripts", scripts.length);
+    }
+}
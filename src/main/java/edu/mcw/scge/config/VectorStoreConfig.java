@@ -1,13 +1,20 @@
 package edu.mcw.scge.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import edu.mcw.scge.repository.CorpusVersionRepository;
 import edu.mcw.scge.repository.DocumentEmbeddingOpenAIRepository;
+import edu.mcw.scge.service.ChunkDeduplicator;
 import edu.mcw.scge.vectorstore.PostgresVectorStoreOpenAI;
 
 import jakarta.annotation.PostConstruct;
@@ -15,10 +22,55 @@ import java.util.Map;
 
 @Configuration
 public class VectorStoreConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(VectorStoreConfig.class);
 
     @Autowired
     private ApplicationContext context;
 
+    // Embedding model bean to use; blank picks the first OpenAI one
+    @Value("${pipeline.embedding.bean:}")
+    private String embeddingBean;
+
+    // Model to request; blank keeps the model configured for the Spring AI embedding model
+    @Value("${pipeline.embedding.model:}")
+    private String embeddingModelName;
+
+    // Only sent when set: text-embedding-3 models can return shortened vectors (e.g. 512 or 768),
+    // other models reject the parameter. Must match the embedding column
+    @Value("${pipeline.embedding.dimensions:}")
+    private Integer embeddingDimensions;
+
+    // Answer similarity searches with binary-quantized candidates and an exact rerank
+    @Value("${pipeline.search.quantized:false}")
+    private boolean quantizedSearch;
+
+    @Value("${pipeline.search.oversample:4}")
+    private int oversample;
+
+    // Nearest chunks grouped search fetches per requested trial before grouping by trial
+    @Value("${pipeline.search.grouped-candidates-per-trial:20}")
+    private int groupedCandidatesPerTrial;
+
+    // Trials hierarchical search picks by trial vector before ranking their chunks
+    @Value("${pipeline.search.hierarchical-trials:20}")
+    private int hierarchicalTrials;
+
+    // Max cached search results per corpus version (0 disables the cache)
+    @Value("${pipeline.search.cache-size:1000}")
+    private int searchCacheSize;
+
+    // Searches whose SQL takes at least this long are logged to slow-query.log with their plan (0 = off)
+    @Value("${pipeline.search.slow-query-ms:1000}")
+    private long slowQueryMillis;
+
+    // EXPLAIN ANALYZE runs the statement again, so plans are captured at most this often
+    @Value("${pipeline.search.slow-query-explain-interval-seconds:60}")
+    private long slowQueryExplainIntervalSeconds;
+
+    // Log per-phase latency percentiles every N searches (0 = never)
+    @Value("${pipeline.search.latency-report-every:100}")
+    private int latencyReportEvery;
+
     @PostConstruct
     public void debugBeans() {
         System.out.println("=== ALL EMBEDDING MODEL BEANS ===");
@@ -31,23 +83,30 @@ public class VectorStoreConfig {
 
     @Bean
     @Qualifier("openaiVectorStore")
-    VectorStore openaiVectorStore(DocumentEmbeddingOpenAIRepository repository) {
+    VectorStore openaiVectorStore(DocumentEmbeddingOpenAIRepository repository, ChunkDeduplicator deduplicator,
+                                  CorpusVersionRepository corpusVersion,
+                                  PlatformTransactionManager transactionManager) {
         System.out.println("Looking for OpenAI embedding model...");
 
         // Get all embedding models and find the OpenAI one
         Map<String, EmbeddingModel> embeddingModels = context.getBeansOfType(EmbeddingModel.class);
-        EmbeddingModel openAiModel = null;
+        EmbeddingModel openAiModel = embeddingBean.isBlank() ? null : embeddingModels.get(embeddingBean);
+        if (!embeddingBean.isBlank() && openAiModel == null) {
+            throw new RuntimeException("No embedding model bean '" + embeddingBean + "'! Available beans: " + embeddingModels.keySet());
+        }
 
-        for (Map.Entry<String, EmbeddingModel> entry : embeddingModels.entrySet()) {
-            String beanName = entry.getKey();
-            EmbeddingModel model = entry.getValue();
-            System.out.println("Checking bean: '" + beanName + "', Class: " + model.getClass().getSimpleName());
-
-            // Look for OpenAI embedding model by class name
-            if (model.getClass().getSimpleName().toLowerCase().contains("openai")) {
-                openAiModel = model;
-                System.out.println("Found OpenAI embedding model: " + beanName);
-                break;
+        if (openAiModel == null) {
+            for (Map.Entry<String, EmbeddingModel> entry : embeddingModels.entrySet()) {
+                String beanName = entry.getKey();
+                EmbeddingModel model = entry.getValue();
+                System.out.println("Checking bean: '" + beanName + "', Class: " + model.getClass().getSimpleName());
+
+                // Look for OpenAI embedding model by class name
+                if (model.getClass().getSimpleName().toLowerCase().contains("openai")) {
+                    openAiModel = model;
+                    System.out.println("Found OpenAI embedding model: " + beanName);
+                    break;
+                }
             }
         }
 
@@ -55,6 +114,26 @@ public class VectorStoreConfig {
             throw new RuntimeException("Could not find OpenAI embedding model! Available beans: " + embeddingModels.keySet());
         }
 
-        return new PostgresVectorStoreOpenAI(repository, openAiModel);
+        OpenAiEmbeddingOptions options = null;
+        if (!embeddingModelName.isBlank() || embeddingDimensions != null) {
+            options = OpenAiEmbeddingOptions.builder()
+                    .withModel(embeddingModelName.isBlank() ? null : embeddingModelName)
+                    .withDimensions(embeddingDimensions)
+                    .build();
+        }
+        LOG.info("Embedding with model {} at {} dimensions",
+                embeddingModelName.isBlank() ? "(configured default)" : embeddingModelName,
+                embeddingDimensions == null ? "(model default)" : embeddingDimensions);
+
+        PostgresVectorStoreOpenAI vectorStore = new PostgresVectorStoreOpenAI(
+                repository, openAiModel, options, deduplicator, corpusVersion);
+        vectorStore.configureTransactions(transactionManager);
+        vectorStore.configureQuantizedSearch(quantizedSearch, oversample);
+        vectorStore.configureGroupedSearch(groupedCandidatesPerTrial);
+        vectorStore.configureHierarchicalSearch(hierarchicalTrials);
+        vectorStore.enableResultCache(searchCacheSize);
+        vectorStore.enableSlowQueryLog(slowQueryMillis, slowQueryExplainIntervalSeconds);
+        vectorStore.reportLatencyEvery(latencyReportEvery);
+        return vectorStore;
     }
 }
@@ -0,0 +1,296 @@
+package edu.mcw.scge.controller;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import edu.mcw.scge.repository.CorpusSnapshotRepository;
+import edu.mcw.scge.repository.CorpusVersionRepository;
+import edu.mcw.scge.repository.EmbeddingMigrationRepository;
+import edu.mcw.scge.repository.TrialVectorRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exports the vector corpus to a snapshot directory and imports it into another database.
+ * <p>
+ * A snapshot holds one zstd-compressed binary COPY stream per table plus a manifest:
+ * <pre>
+ *   manifest.json                     format, embedding dimensions, columns, row counts, indexes
+ *   clinical_trials.copy.zst
+ *   document_embeddings.copy.zst
+ *   trial_vectors.copy.zst
+ * </pre>
+ * The manifest is written last, so a directory without one is an interrupted export. Importing
+ * replaces the target's trials and chunks in one transaction: secondary indexes are dropped, the rows
+ * are copied in, and the indexes (the target's own plus any the source had, e.g. HNSW) are built
+ * once over the loaded data. No embedding calls are made on either side.
+ */
+@Component
+public class CorpusSnapshot {
+    private static final Logger LOG = LoggerFactory.getLogger(CorpusSnapshot.class);
+
+    private static final int FORMAT = 1;
+    private static final String MANIFEST = "manifest.json";
+    private static final String DATA_SUFFIX = ".copy.zst";
+
+    // Load order: chunks and trial vectors reference trials
+    private static final List<Table> TABLES = List.of(
+            new Table("clinical_trials", "nct_id"),
+            new Table("document_embeddings", "id"),
+            new Table("trial_vectors", "nct_id"));
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final CorpusSnapshotRepository repository;
+    private final EmbeddingMigrationRepository migrationRepository;
+    private final CorpusVersionRepository corpusVersion;
+    private final TrialVectorRepository trialVectors;
+    private final TransactionTemplate exportTransaction;
+    private final TransactionTemplate importTransaction;
+
+    @Value("${pipeline.snapshot.dir:}")
+    private String snapshotDir;
+
+    @Value("${pipeline.snapshot.compression-level:3}")
+    private int compressionLevel;
+
+    // Allow an import to replace a non-empty corpus
+    @Value("${pipeline.snapshot.replace:false}")
+    private boolean replace;
+
+    // maintenance_work_mem for the index builds after an import; HNSW builds are much faster in memory
+    @Value("${pipeline.snapshot.maintenance-work-mem:1GB}")
+    private String maintenanceWorkMem;
+
+    // Same model the vector store requests: pipeline.embedding.model, else the Spring AI setting
+    @Value("${pipeline.embedding.model:${spring.ai.openai.embedding.options.model:text-embedding-ada-002}}")
+    private String embeddingModel;
+
+    // Import a snapshot embedded by a different model; its vectors won't be comparable to new queries
+    @Value("${pipeline.snapshot.allow-model-mismatch:false}")
+    private boolean allowModelMismatch;
+
+    public CorpusSnapshot(CorpusSnapshotRepository repository,
+                          EmbeddingMigrationRepository migrationRepository,
+                          CorpusVersionRepository corpusVersion,
+                          TrialVectorRepository trialVectors,
+                          PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.migrationRepository = migrationRepository;
+        this.corpusVersion = corpusVersion;
+        this.trialVectors = trialVectors;
+
+        // One consistent view of all tables while they are copied out
+        this.exportTransaction = new TransactionTemplate(transactionManager);
+        this.exportTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.exportTransaction.setReadOnly(true);
+        this.importTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Write the corpus to pipeline.snapshot.dir
+     */
+    public void exportSnapshot() {
+        Path dir = snapshotDir();
+        if (Files.exists(dir.resolve(MANIFEST))) {
+            throw new IllegalStateException("A snapshot already exists in " + dir);
+        }
+        if (migrationRepository.columnDimensions(EmbeddingMigrationRepository.NEXT_COLUMN) != null) {
+            throw new IllegalStateException("An embedding migration is in progress; finish it before exporting");
+        }
+
+        long start = System.currentTimeMillis();
+        Manifest manifest = exportTransaction.execute(status -> {
+            List<TableManifest> tables = new ArrayList<>();
+            for (Table table : TABLES) {
+                List<String> columns = repository.columns(table.name());
+                Path file = dir.resolve(table.name() + DATA_SUFFIX);
+
+                long rows;
+                try (OutputStream out = new ZstdOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(file)), compressionLevel)) {
+                    rows = repository.copyOut(table.name(), columns, table.orderBy(), out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not write " + file, e);
+                }
+                LOG.info("Exported {} rows of {} ({} KB)", rows, table.name(), size(file) / 1024);
+                tables.add(new TableManifest(table.name(), file.getFileName().toString(), columns, rows,
+                        repository.secondaryIndexes(table.name())));
+            }
+            return new Manifest(FORMAT, Instant.now().toString(), embeddingModel,
+                    migrationRepository.columnDimensions(EmbeddingMigrationRepository.LIVE_COLUMN),
+                    corpusVersion.current(), tables);
+        });
+
+        try (Writer writer = Files.newBufferedWriter(dir.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            GSON.toJson(manifest, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write snapshot manifest", e);
+        }
+        LOG.info("Snapshot written to {} in {}s", dir, (System.currentTimeMillis() - start) / 1000);
+    }
+
+    /**
+     * Replace the corpus with the snapshot in pipeline.snapshot.dir
+     */
+    public void importSnapshot() {
+        Path dir = snapshotDir();
+        Manifest manifest = readManifest(dir);
+        LOG.info("Importing snapshot of {} (model {}, {} dimensions) from {}",
+                manifest.createdAt(), manifest.embeddingModel(), manifest.dimensions(), dir);
+        checkCompatible(manifest);
+
+        long existing = 0;
+        for (Table table : TABLES) {
+            existing += repository.count(table.name());
+        }
+        if (existing > 0 && !replace) {
+            throw new IllegalStateException("Target corpus is not empty (" + existing +
+                    " rows); set pipeline.snapshot.replace=true to overwrite it");
+        }
+
+        long start = System.currentTimeMillis();
+        importTransaction.executeWithoutResult(status -> {
+            repository.truncate(TABLES.stream().map(Table::name).toList());
+
+            // Rows go in without index maintenance; every index is built once afterwards
+            Map<String, String> indexes = new LinkedHashMap<>();
+            for (TableManifest table : manifest.tables()) {
+                Map<String, String> targetIndexes = repository.secondaryIndexes(table.name());
+                targetIndexes.keySet().forEach(repository::dropIndex);
+                indexes.putAll(targetIndexes);
+                table.indexes().forEach(indexes::putIfAbsent);
+            }
+
+            for (TableManifest table : manifest.tables()) {
+                Path file = dir.resolve(table.file());
+                long rows;
+                try (InputStream in = new ZstdInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    rows = repository.copyIn(table.name(), table.columns(), in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read " + file, e);
+                }
+                if (rows != table.rows()) {
+                    throw new IllegalStateException("Loaded " + rows + " rows into " + table.name() +
+                            ", the manifest lists " + table.rows());
+                }
+                LOG.info("Loaded {} rows into {}", rows, table.name());
+            }
+            repository.resetSequence("document_embeddings");
+
+            repository.setMaintenanceWorkMem(maintenanceWorkMem);
+            for (Map.Entry<String, String> index : indexes.entrySet()) {
+                long indexStart = System.currentTimeMillis();
+                repository.createIndex(index.getValue());
+                LOG.info("Built index {} in {}s", index.getKey(), (System.currentTimeMillis() - indexStart) / 1000);
+            }
+            // Snapshots taken before trial vectors existed carry none; they derive from the chunks
+            if (manifest.tables().stream().noneMatch(table -> table.name().equals("trial_vectors"))) {
+                LOG.info("Snapshot has no trial vectors, rebuilt {} from the chunks", trialVectors.rebuildAll());
+            }
+            corpusVersion.bump();
+        });
+
+        for (Table table : TABLES) {
+            repository.analyze(table.name());
+        }
+        LOG.info("Snapshot imported in {}s", (System.currentTimeMillis() - start) / 1000);
+    }
+
+    private void checkCompatible(Manifest manifest) {
+        if (manifest.format() != FORMAT) {
+            throw new IllegalStateException("Unsupported snapshot format " + manifest.format());
+        }
+        if (migrationRepository.columnDimensions(EmbeddingMigrationRepository.NEXT_COLUMN) != null) {
+            throw new IllegalStateException("An embedding migration is in progress on the target");
+        }
+        // -1 means the column was declared without dimensions and takes any
+        Integer targetDimensions = migrationRepository.columnDimensions(EmbeddingMigrationRepository.LIVE_COLUMN);
+        if (targetDimensions != null && targetDimensions > 0 && manifest.dimensions() != null &&
+                manifest.dimensions() > 0 && !targetDimensions.equals(manifest.dimensions())) {
+            throw new IllegalStateException("Snapshot has " + manifest.dimensions() +
+                    "-dimension embeddings, the target column has " + targetDimensions);
+        }
+        if (!embeddingModel.equals(manifest.embeddingModel())) {
+            if (!allowModelMismatch) {
+                throw new IllegalStateException("Snapshot was embedded with " + manifest.embeddingModel() +
+                        ", this pipeline queries with " + embeddingModel +
+                        "; set pipeline.snapshot.allow-model-mismatch=true to import it anyway");
+            }
+            LOG.warn("Importing a snapshot embedded with {} into a pipeline that queries with {}",
+                    manifest.embeddingModel(), embeddingModel);
+        }
+        for (TableManifest table : manifest.tables()) {
+            List<String> missing = new ArrayList<>(table.columns());
+            missing.removeAll(repository.columns(table.name()));
+            if (!missing.isEmpty()) {
+                throw new IllegalStateException("Target table " + table.name() + " lacks columns " + missing);
+            }
+        }
+    }
+
+    private Path snapshotDir() {
+        if (snapshotDir.isBlank()) {
+            throw new IllegalStateException("Snapshot export/import requires pipeline.snapshot.dir");
+        }
+        Path dir = Path.of(snapshotDir);
+        try {
+            return Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create snapshot directory " + dir, e);
+        }
+    }
+
+    private static Manifest readManifest(Path dir) {
+        Path file = dir.resolve(MANIFEST);
+        if (!Files.exists(file)) {
+            throw new IllegalStateException("No complete snapshot in " + dir + " (missing " + MANIFEST + ")");
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, Manifest.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private record Table(String name, String orderBy) {
+    }
+
+    record Manifest(int format, String createdAt, String embeddingModel, Integer dimensions,
+                    long corpusVersion, List<TableManifest> tables) {
+    }
+
+    record TableManifest(String name, String file, List<String> columns, long rows, Map<String, String> indexes) {
+    }
+}
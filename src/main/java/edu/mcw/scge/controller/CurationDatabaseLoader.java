@@ -0,0 +1,82 @@
+package edu.mcw.scge.controller;
+
+import edu.mcw.scge.dao.DataSourceFactory;
+import edu.mcw.scge.repository.CurationReportRepository;
+import edu.mcw.scge.service.RefreshScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads every trial from the curation database instead of its report page (pipeline.mode=load-db).
+ * <p>
+ * No page is fetched or parsed: the report text is rendered from {@link CurationReportRepository}
+ * in batches of {@code pipeline.curation.batch-size} trials, three queries per batch, and each trial
+ * then goes through the same preprocessing, change detection and embedding as in "load". Batches
+ * are read as the run reaches them, so trials deferred by the run budget are never queried.
+ */
+@Component
+public class CurationDatabaseLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(CurationDatabaseLoader.class);
+
+    private final UrlController urlController;
+    private final RefreshScheduler refreshScheduler;
+
+    @Value("${pipeline.curation.batch-size:500}")
+    private int batchSize;
+
+    public CurationDatabaseLoader(UrlController urlController, RefreshScheduler refreshScheduler) {
+        this.urlController = urlController;
+        this.refreshScheduler = refreshScheduler;
+    }
+
+    public void load() {
+        LOG.info("Starting clinical trials loading from the curation database");
+        List<String> nctIds = refreshScheduler.prioritize(urlController.getCurationNctIds());
+
+        CurationReportRepository reports;
+        try {
+            reports = new CurationReportRepository(DataSourceFactory.getInstance().getScgePlatformDataSource());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to open the curation database: " + e.getMessage(), e);
+        }
+        reports.verifyViews();
+
+        // Trimmed, distinct IDs in run order; the run walks this list so each trial's batch is still loaded
+        List<String> order = new ArrayList<>(nctIds.size());
+        Map<String, Integer> positions = new HashMap<>();
+        for (String nctId : nctIds) {
+            if (nctId != null && !nctId.trim().isEmpty() && positions.putIfAbsent(nctId.trim(), order.size()) == null) {
+                order.add(nctId.trim());
+            }
+        }
+
+        Set<String> requested = new HashSet<>();
+        Map<String, String> batch = new HashMap<>();
+        urlController.loadClinicalTrials(order, nctId -> {
+            if (!requested.contains(nctId)) {
+                int from = positions.get(nctId);
+                List<String> next = order.subList(from, Math.min(from + Math.max(batchSize, 1), order.size()));
+                batch.clear();
+                try {
+                    batch.putAll(reports.findReportContent(next));
+                } catch (Exception e) {
+                    // The batch's trials are recorded as failed one by one, like unreachable pages
+                    LOG.error("Failed to read {} trials from the curation database", next.size(), e);
+                }
+                requested.addAll(next);
+                LOG.info("Read report content of {} of {} trials from the curation database",
+                        batch.size(), next.size());
+            }
+            return urlController.processTrialContent(nctId, batch.get(nctId));
+        });
+    }
+}
@@ -0,0 +1,165 @@
+package edu.mcw.scge.controller;
+
+import edu.mcw.scge.repository.TrialWorkQueueRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Distributed ingestion over the trial work queue.
+ * <p>
+ * One process runs {@link #enqueueAll()} to publish the NCT IDs; any number of processes on any
+ * number of hosts then run {@link #work()}, each claiming small batches, renewing the lease on the
+ * trial it is working on in the background and marking every trial done or failed. A worker that
+ * dies, or hangs on a trial, stops renewing, and its trials are claimed by the remaining workers once
+ * their leases run out.
+ */
+@Component
+public class DistributedIngestWorker {
+    private static final Logger LOG = LoggerFactory.getLogger(DistributedIngestWorker.class);
+
+    private final UrlController urlController;
+    private final TrialWorkQueueRepository queue;
+
+    @Value("${pipeline.queue.worker-id:}")
+    private String configuredWorkerId;
+
+    @Value("${pipeline.queue.batch-size:10}")
+    private int batchSize;
+
+    @Value("${pipeline.queue.lease-seconds:300}")
+    private int leaseSeconds;
+
+    @Value("${pipeline.queue.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${pipeline.queue.poll-seconds:30}")
+    private int pollSeconds;
+
+    // Stop renewing the lease on a trial after this long, so a hung worker gives it back (0 = never)
+    @Value("${pipeline.queue.max-processing-seconds:1800}")
+    private long maxProcessingSeconds;
+
+    public DistributedIngestWorker(UrlController urlController, TrialWorkQueueRepository queue) {
+        this.urlController = urlController;
+        this.queue = queue;
+    }
+
+    /**
+     * Publish every NCT ID from the curation database as pending work
+     */
+    public void enqueueAll() {
+        List<String> nctIds = urlController.getCurationNctIds().stream()
+                .filter(nctId -> nctId != null && !nctId.trim().isEmpty())
+                .map(String::trim)
+                .distinct()
+                .toList();
+
+        queue.enqueue(nctIds);
+        LOG.info("Enqueued {} trials, {} outstanding in work queue", nctIds.size(), queue.countOutstanding());
+    }
+
+    /**
+     * Claim and process trials until the queue is drained
+     */
+    public void work() {
+        String workerId = configuredWorkerId.isBlank()
+                ? ManagementFactory.getRuntimeMXBean().getName()
+                : configuredWorkerId;
+        LOG.info("Worker {} starting - batch size: {}, lease: {}s, max attempts: {}",
+                workerId, batchSize, leaseSeconds, maxAttempts);
+
+        ScheduledExecutorService leaseRenewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lease-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicReference<InProgress> inProgress = new AtomicReference<>();
+        long renewEvery = Math.max(1, leaseSeconds / 3);
+        leaseRenewer.scheduleAtFixedRate(() -> {
+            InProgress trial = inProgress.get();
+            if (trial == null) {
+                return;
+            }
+            long processingSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - trial.startNanos());
+            if (maxProcessingSeconds > 0 && processingSeconds > maxProcessingSeconds) {
+                LOG.warn("Not renewing the lease on {} after {}s of processing", trial.nctId(), processingSeconds);
+                return;
+            }
+            try {
+                queue.renewLease(trial.nctId(), workerId, leaseSeconds);
+            } catch (Exception e) {
+                LOG.warn("Lease renewal failed for {}: {}", workerId, e.getMessage());
+            }
+        }, renewEvery, renewEvery, TimeUnit.SECONDS);
+
+        int done = 0;
+        int failed = 0;
+        try {
+            while (true) {
+                int exhausted = queue.failExhausted(maxAttempts);
+                if (exhausted > 0) {
+                    LOG.warn("Marked {} trials failed after {} expired leases", exhausted, maxAttempts);
+                }
+
+                List<String> batch = queue.claim(workerId, batchSize, leaseSeconds, maxAttempts);
+                if (batch.isEmpty()) {
+                    long outstanding = queue.countOutstanding();
+                    if (outstanding == 0) {
+                        break;
+                    }
+                    // Other workers still hold leases; wait in case one of them dies
+                    LOG.info("Nothing to claim, {} trials still leased by other workers", outstanding);
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(pollSeconds));
+                    continue;
+                }
+
+                LOG.info("Worker {} claimed {} trials", workerId, batch.size());
+                for (String nctId : batch) {
+                    // The rest of the batch is not renewed while it waits; skip trials whose lease ran out and was taken over
+                    if (!queue.renewLease(nctId, workerId, leaseSeconds)) {
+                        LOG.warn("Lease on {} expired before it was started, another worker has taken it over", nctId);
+                        continue;
+                    }
+                    inProgress.set(new InProgress(nctId, System.nanoTime()));
+                    UrlController.TrialOutcome outcome;
+                    try {
+                        outcome = urlController.processTrial(nctId);
+                    } finally {
+                        inProgress.set(null);
+                    }
+                    boolean held = outcome == UrlController.TrialOutcome.FAILED
+                            ? queue.markFailed(nctId, workerId, "Processing failed on " + workerId)
+                            : queue.markDone(nctId, workerId);
+
+                    if (outcome == UrlController.TrialOutcome.FAILED) {
+                        failed++;
+                    } else {
+                        done++;
+                    }
+                    if (!held) {
+                        LOG.warn("Lease on {} was lost before completion, another worker has taken it over", nctId);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Worker {} interrupted, unfinished leases will expire", workerId);
+        } finally {
+            leaseRenewer.shutdownNow();
+        }
+
+        LOG.info("Worker {} finished - done: {}, failed: {}", workerId, done, failed);
+    }
+
+    private record InProgress(String nctId, long startNanos) {
+    }
+}
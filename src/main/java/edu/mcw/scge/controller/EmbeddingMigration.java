@@ -0,0 +1,205 @@
+package edu.mcw.scge.controller;
+
+import edu.mcw.scge.repository.CorpusVersionRepository;
+import edu.mcw.scge.repository.EmbeddingMigrationRepository;
+import edu.mcw.scge.repository.EmbeddingMigrationRepository.PendingChunk;
+import edu.mcw.scge.repository.TrialVectorRepository;
+import edu.mcw.scge.vectorstore.PostgresVectorStoreOpenAI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Re-embeds the whole corpus at the configured model and dimensions, then cuts over atomically.
+ * <p>
+ * Chunks are re-embedded in keyset batches into a second vector column while the live column keeps
+ * serving searches, throttled to a token budget per minute. The migration can be stopped and
+ * started again; it picks up the rows still missing a new vector. Once the new column is full its
+ * HNSW index is built concurrently. Chunks ingested in the meantime are caught up outside any lock
+ * until only a few remain; a short transaction then locks the table, embeds that remainder and
+ * swaps the columns. Trial vectors are rebuilt once the swap has committed.
+ * <p>
+ * Run it with the new pipeline.embedding.* settings. Loads and searches must keep the old settings
+ * until the cutover has happened.
+ */
+@Component
+public class EmbeddingMigration {
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddingMigration.class);
+
+    private final PostgresVectorStoreOpenAI vectorStore;
+    private final EmbeddingMigrationRepository repository;
+    private final CorpusVersionRepository corpusVersion;
+    private final TrialVectorRepository trialVectors;
+    private final TransactionTemplate transactionTemplate;
+
+    // Target dimensions; unset means whatever the configured model returns, as for the vector store
+    @Value("${pipeline.embedding.dimensions:}")
+    private Integer configuredDimensions;
+
+    private int dimensions;
+
+    // Chunks per embedding request
+    @Value("${pipeline.reembed.batch-size:256}")
+    private int batchSize;
+
+    // Embedding token budget per minute (0 = unthrottled)
+    @Value("${pipeline.reembed.tokens-per-minute:500000}")
+    private long tokensPerMinute;
+
+    @Value("${pipeline.reembed.build-index:true}")
+    private boolean buildIndex;
+
+    // Most chunks left to embed while the table is locked for the swap; more pending fails the cutover
+    @Value("${pipeline.reembed.max-pending-under-lock:500}")
+    private int maxPendingUnderLock;
+
+    // Catch-up passes before the cutover gives up on ingestion ever slowing down
+    @Value("${pipeline.reembed.catch-up-rounds:10}")
+    private int catchUpRounds;
+
+    // Re-embed even when the live column already has the configured dimensions (e.g. a model change)
+    @Value("${pipeline.reembed.force:false}")
+    private boolean force;
+
+    public EmbeddingMigration(@Qualifier("openaiVectorStore") VectorStore vectorStore,
+                              EmbeddingMigrationRepository repository,
+                              CorpusVersionRepository corpusVersion,
+                              TrialVectorRepository trialVectors,
+                              PlatformTransactionManager transactionManager) {
+        this.vectorStore = (PostgresVectorStoreOpenAI) vectorStore;
+        this.repository = repository;
+        this.corpusVersion = corpusVersion;
+        this.trialVectors = trialVectors;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void migrate() {
+        dimensions = configuredDimensions != null ? configuredDimensions : modelDimensions();
+        Integer liveDimensions = repository.columnDimensions(EmbeddingMigrationRepository.LIVE_COLUMN);
+        if (liveDimensions == null) {
+            throw new IllegalStateException("document_embeddings has no embedding column");
+        }
+        Integer nextDimensions = repository.columnDimensions(EmbeddingMigrationRepository.NEXT_COLUMN);
+
+        if (nextDimensions == null) {
+            if (liveDimensions == dimensions && !force) {
+                LOG.info("Embedding column already has {} dimensions, nothing to migrate", dimensions);
+                return;
+            }
+            repository.addNextColumn(dimensions);
+        } else if (nextDimensions != dimensions) {
+            throw new IllegalStateException("An unfinished migration to " + nextDimensions +
+                    " dimensions exists; configure pipeline.embedding.dimensions=" + nextDimensions +
+                    " to finish it, or drop the " + EmbeddingMigrationRepository.NEXT_COLUMN + " column");
+        }
+
+        LOG.info("Re-embedding {} chunks from {} to {} dimensions",
+                repository.countPending(), liveDimensions, dimensions);
+        long start = System.currentTimeMillis();
+        int migrated = reembedPending(true);
+        LOG.info("Re-embedded {} chunks in {}s", migrated, (System.currentTimeMillis() - start) / 1000);
+
+        if (buildIndex) {
+            LOG.info("Building HNSW index on {}", EmbeddingMigrationRepository.NEXT_COLUMN);
+            repository.createNextIndex();
+        }
+        if (repository.hasLiveBinaryIndex()) {
+            LOG.info("Building binary-quantized index on {}", EmbeddingMigrationRepository.NEXT_COLUMN);
+            repository.createNextBinaryIndex(dimensions);
+        }
+
+        // Catch up on chunks ingested since the pass above without holding any lock
+        long pending = repository.countPending();
+        for (int round = 1; pending > maxPendingUnderLock; round++) {
+            if (round > catchUpRounds) {
+                throw new IllegalStateException(pending + " chunks still pending after " + catchUpRounds +
+                        " catch-up passes; run the migration again when ingestion is quieter");
+            }
+            LOG.info("Catch-up pass {}: re-embedding {} chunks ingested meanwhile", round, pending);
+            reembedPending(true);
+            pending = repository.countPending();
+        }
+
+        // Only the last few chunks are embedded under the lock, unthrottled, then the columns are swapped
+        int caughtUp = transactionTemplate.execute(status -> {
+            repository.lockTable();
+            long remaining = repository.countPending();
+            if (remaining > maxPendingUnderLock) {
+                throw new IllegalStateException(remaining + " chunks pending at cutover, more than " +
+                        "pipeline.reembed.max-pending-under-lock=" + maxPendingUnderLock + "; run the migration again");
+            }
+            int embedded = reembedPending(false);
+            repository.swapColumns();
+            corpusVersion.bump();
+            return embedded;
+        });
+        LOG.info("Cut over to {}-dimension embeddings ({} chunks caught up under lock)", dimensions, caughtUp);
+
+        // Trial vectors are means of the old vectors; recompute them at the new dimensions
+        int trials = trialVectors.rebuildAll();
+        corpusVersion.bump();
+        LOG.info("Rebuilt {} trial vectors", trials);
+    }
+
+    // Size of the vectors the store's embedding requests return
+    private int modelDimensions() {
+        int modelDimensions = vectorStore.embed(List.of("dimension probe")).getResults().get(0).getOutput().length;
+        LOG.info("pipeline.embedding.dimensions is not set, the embedding model returns {} dimensions", modelDimensions);
+        return modelDimensions;
+    }
+
+    private int reembedPending(boolean throttled) {
+        long started = System.currentTimeMillis();
+        long tokens = 0;
+        long afterId = 0;
+        int migrated = 0;
+
+        List<PendingChunk> page;
+        while (!(page = repository.findPendingAfterId(afterId, batchSize)).isEmpty()) {
+            List<String> texts = page.stream().map(PendingChunk::chunk).toList();
+            EmbeddingResponse response = vectorStore.embed(texts);
+            List<float[]> embeddings = response.getResults().stream().map(Embedding::getOutput).toList();
+
+            if (embeddings.size() != page.size() || embeddings.get(0).length != dimensions) {
+                throw new IllegalStateException("Expected " + page.size() + " embeddings of " + dimensions +
+                        " dimensions, got " + embeddings.size() + " of " + embeddings.get(0).length);
+            }
+            repository.storeNext(page, embeddings);
+
+            afterId = page.get(page.size() - 1).id();
+            migrated += page.size();
+            tokens += PostgresVectorStoreOpenAI.tokensUsed(response, texts);
+            LOG.debug("Re-embedded {} chunks ({} tokens so far)", migrated, tokens);
+
+            if (throttled) {
+                throttle(tokens, started);
+            }
+        }
+        return migrated;
+    }
+
+    private void throttle(long tokens, long started) {
+        if (tokensPerMinute <= 0) {
+            return;
+        }
+        long earliest = started + tokens * 60_000 / tokensPerMinute;
+        long wait = earliest - System.currentTimeMillis();
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Re-embedding interrupted", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package edu.mcw.scge.controller;
+
+import edu.mcw.scge.model.DocumentEmbeddingOpenAI;
+import edu.mcw.scge.repository.DocumentEmbeddingOpenAIRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recall and latency of the binary-quantized two-phase search against the exact query.
+ * <p>
+ * Stored chunk embeddings serve as query vectors, so no embedding calls are made. For every
+ * oversampling factor the quantized top-k is compared with the top-k of findNearestNeighbors.
+ */
+@Component
+public class QuantizedSearchBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(QuantizedSearchBenchmark.class);
+
+    private final DocumentEmbeddingOpenAIRepository repository;
+
+    @Value("${pipeline.benchmark.queries:100}")
+    private int queryCount;
+
+    @Value("${pipeline.benchmark.top-k:10}")
+    private int topK;
+
+    @Value("${pipeline.benchmark.oversample:1,2,4,8,16}")
+    private int[] oversampleFactors;
+
+    public QuantizedSearchBenchmark(DocumentEmbeddingOpenAIRepository repository) {
+        this.repository = repository;
+    }
+
+    public void run() {
+        LOG.info("Ensuring binary-quantized HNSW index exists");
+        repository.createBinaryQuantizedIndex();
+
+        List<float[]> queries = repository.findRandomWithEmbeddings(queryCount).stream()
+                .map(de -> de.getEmbedding().toArray())
+                .toList();
+        if (queries.isEmpty()) {
+            LOG.warn("No embedded chunks to benchmark against");
+            return;
+        }
+        LOG.info("Benchmarking {} queries, top-{}", queries.size(), topK);
+
+        // Ground truth, timed as the baseline
+        List<Set<Long>> exact = new ArrayList<>(queries.size());
+        long[] exactNanos = new long[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            List<DocumentEmbeddingOpenAI> nearest = repository.findNearestNeighbors(queries.get(i), topK);
+            exactNanos[i] = System.nanoTime() - start;
+            exact.add(ids(nearest));
+        }
+        LOG.info("exact          recall@{}=1.000  p50={}ms  p99={}ms", topK,
+                millis(percentile(exactNanos, 50)), millis(percentile(exactNanos, 99)));
+
+        for (int oversample : oversampleFactors) {
+            long[] nanos = new long[queries.size()];
+            long found = 0;
+            long expected = 0;
+            for (int i = 0; i < queries.size(); i++) {
+                long start = System.nanoTime();
+                List<DocumentEmbeddingOpenAI> nearest = repository.findNearestNeighborsQuantized(
+                        queries.get(i), topK, topK * oversample, 0);
+                nanos[i] = System.nanoTime() - start;
+
+                Set<Long> hits = ids(nearest);
+                hits.retainAll(exact.get(i));
+                found += hits.size();
+                expected += exact.get(i).size();
+            }
+            LOG.info("quantized x{}  recall@{}={}  p50={}ms  p99={}ms", String.format("%-3d", oversample), topK,
+                    String.format("%.3f", expected == 0 ? 1.0 : (double) found / expected),
+                    millis(percentile(nanos, 50)), millis(percentile(nanos, 99)));
+        }
+    }
+
+    private static Set<Long> ids(List<DocumentEmbeddingOpenAI> results) {
+        Set<Long> ids = new HashSet<>();
+        for (DocumentEmbeddingOpenAI de : results) {
+            ids.add(de.getId());
+        }
+        return ids;
+    }
+
+    private static long percentile(long[] values, int percentile) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+}
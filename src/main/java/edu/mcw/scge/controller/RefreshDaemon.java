@@ -0,0 +1,260 @@
+package edu.mcw.scge.controller;
+
+import edu.mcw.scge.service.RefreshScheduler;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the application context warm and refreshes trials from inside the running process.
+ * <p>
+ * A full refresh runs on the {@code pipeline.daemon.cron} schedule. In between, a dedicated
+ * connection LISTENs on {@code pipeline.daemon.channel}: a notification whose payload lists NCT IDs
+ * (comma or whitespace separated) refreshes just those trials, an empty payload queues a full
+ * refresh. Publish changes with e.g. {@code NOTIFY trial_changes, 'NCT01234567'} on the pipeline
+ * database. Notifications sent while the listener is reconnecting are lost; the schedule picks
+ * those changes up.
+ * <p>
+ * All refreshes run one at a time on a single thread, and notifications arriving during a refresh
+ * are coalesced into one follow-up run. On shutdown (SIGTERM) the running refresh stops after its
+ * current trial, queued work is dropped, and {@link #run()} returns once the refresh thread is idle
+ * or {@code pipeline.daemon.drain-seconds} have passed.
+ */
+@Component
+public class RefreshDaemon {
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshDaemon.class);
+
+    private static final Pattern CHANNEL = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final Pattern PAYLOAD_SEPARATOR = Pattern.compile("[\\s,]+");
+    private static final int POLL_MILLIS = 1000;
+    private static final long RECONNECT_SECONDS = 30;
+
+    private final UrlController urlController;
+    private final RefreshScheduler refreshScheduler;
+    private final DataSource dataSource;
+
+    // Spring cron expression (second minute hour day month weekday) for full refreshes; "-" disables
+    @Value("${pipeline.daemon.cron:0 0 2 * * *}")
+    private String cron;
+
+    // Postgres NOTIFY channel for change notifications (empty = no listener)
+    @Value("${pipeline.daemon.channel:trial_changes}")
+    private String channel;
+
+    @Value("${pipeline.daemon.run-on-start:false}")
+    private boolean runOnStart;
+
+    // How long shutdown waits for the running refresh to reach a trial boundary
+    @Value("${pipeline.daemon.drain-seconds:600}")
+    private long drainSeconds;
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Set<String> pendingTrials = new LinkedHashSet<>();
+    private boolean fullRefreshQueued;
+    private boolean trialRefreshQueued;
+
+    private volatile boolean stopping;
+    private volatile boolean running;
+    private ScheduledThreadPoolExecutor refreshExecutor;
+    private Thread listener;
+
+    public RefreshDaemon(UrlController urlController, RefreshScheduler refreshScheduler, DataSource dataSource) {
+        this.urlController = urlController;
+        this.refreshScheduler = refreshScheduler;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Start the schedule and the listener, then block until the application shuts down
+     */
+    public void run() throws InterruptedException {
+        CronExpression schedule = CronExpression.isValidExpression(cron) ? CronExpression.parse(cron) : null;
+        if (schedule == null && !"-".equals(cron.trim())) {
+            throw new IllegalArgumentException("Invalid pipeline.daemon.cron: " + cron);
+        }
+        if (!channel.isBlank() && !CHANNEL.matcher(channel).matches()) {
+            throw new IllegalArgumentException("Invalid pipeline.daemon.channel: " + channel);
+        }
+
+        refreshExecutor = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "trial-refresh"));
+        refreshExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        running = true;
+
+        if (schedule != null) {
+            scheduleNext(schedule);
+        }
+        if (!channel.isBlank()) {
+            listener = new Thread(this::listen, "trial-change-listener");
+            listener.setDaemon(true);
+            listener.start();
+        }
+        if (runOnStart) {
+            queueFullRefresh();
+        }
+
+        LOG.info("Daemon started - schedule: {}, channel: {}", schedule != null ? cron : "none",
+                channel.isBlank() ? "none" : channel);
+        stopped.await();
+        LOG.info("Daemon stopped");
+    }
+
+    /**
+     * Stop taking work and let the running refresh finish its current trial; called when the context closes
+     */
+    @PreDestroy
+    public void drain() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        LOG.info("Daemon shutting down, draining the running refresh (up to {}s)", drainSeconds);
+        synchronized (this) {
+            stopping = true;
+        }
+        refreshScheduler.requestStop();
+        refreshExecutor.shutdown();
+
+        if (!refreshExecutor.awaitTermination(drainSeconds, TimeUnit.SECONDS)) {
+            LOG.warn("Refresh still running after {}s, interrupting it", drainSeconds);
+            refreshExecutor.shutdownNow();
+        }
+        if (listener != null) {
+            listener.join(POLL_MILLIS * 2L);
+        }
+        stopped.countDown();
+    }
+
+    private synchronized void scheduleNext(CronExpression schedule) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = schedule.next(now);
+        if (next == null || stopping) {
+            return;
+        }
+        LOG.info("Next scheduled refresh at {}", next);
+        refreshExecutor.schedule(() -> {
+            queueFullRefresh();
+            scheduleNext(schedule);
+        }, Duration.between(now, next).toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void queueFullRefresh() {
+        if (stopping || fullRefreshQueued) {
+            return;
+        }
+        fullRefreshQueued = true;
+        refreshExecutor.execute(this::runFullRefresh);
+    }
+
+    private synchronized void queueTrials(List<String> nctIds) {
+        if (stopping) {
+            return;
+        }
+        pendingTrials.addAll(nctIds);
+        if (!trialRefreshQueued) {
+            trialRefreshQueued = true;
+            refreshExecutor.execute(this::runTrialRefresh);
+        }
+    }
+
+    private void runFullRefresh() {
+        synchronized (this) {
+            fullRefreshQueued = false;
+            // A full refresh covers whatever trials were notified before it started
+            pendingTrials.clear();
+        }
+        if (stopping) {
+            return;
+        }
+        refresh("Full", urlController::loadClinicalTrials);
+    }
+
+    private void runTrialRefresh() {
+        List<String> nctIds;
+        synchronized (this) {
+            trialRefreshQueued = false;
+            nctIds = new ArrayList<>(pendingTrials);
+            pendingTrials.clear();
+        }
+        if (stopping || nctIds.isEmpty()) {
+            return;
+        }
+        refresh("Notified", () -> urlController.loadClinicalTrials(nctIds));
+    }
+
+    private void refresh(String kind, Runnable refresh) {
+        long start = System.currentTimeMillis();
+        try {
+            LOG.info("{} refresh starting", kind);
+            refresh.run();
+            LOG.info("{} refresh finished in {}s", kind, (System.currentTimeMillis() - start) / 1000);
+        } catch (Exception e) {
+            // The daemon outlives a failed run; the next trigger tries again
+            LOG.error("{} refresh failed after {}s", kind, (System.currentTimeMillis() - start) / 1000, e);
+        }
+    }
+
+    private void listen() {
+        while (!stopping) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                LOG.info("Listening for trial changes on channel {}", channel);
+
+                while (!stopping) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            onNotification(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (stopping) {
+                    break;
+                }
+                LOG.warn("Trial change listener lost its connection, reconnecting in {}s: {}",
+                        RECONNECT_SECONDS, e.getMessage());
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(RECONNECT_SECONDS));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void onNotification(String payload) {
+        List<String> nctIds = payload == null ? List.of() : PAYLOAD_SEPARATOR.splitAsStream(payload.trim())
+                .filter(nctId -> !nctId.isEmpty())
+                .toList();
+        LOG.info("Change notification: {}", nctIds.isEmpty() ? "full refresh" : nctIds);
+        if (nctIds.isEmpty()) {
+            queueFullRefresh();
+        } else {
+            queueTrials(nctIds);
+        }
+    }
+}
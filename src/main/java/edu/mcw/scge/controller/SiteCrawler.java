@@ -0,0 +1,420 @@
+package edu.mcw.scge.controller;
+
+import edu.mcw.scge.profiling.IngestEvents;
+import edu.mcw.scge.profiling.TrialIngestEvent;
+import edu.mcw.scge.reader.HttpPageFetcher;
+import edu.mcw.scge.reader.RawPage;
+import edu.mcw.scge.reader.RobotsTxt;
+import edu.mcw.scge.reader.UrlCanonicalizer;
+import edu.mcw.scge.service.RefreshScheduler;
+import edu.mcw.scge.vectorstore.PostgresVectorStoreOpenAI;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Crawls generic pages (anything but the trial reports) into the vector store.
+ * <p>
+ * URLs come from sitemaps ({@code pipeline.crawl.sitemaps}, sitemap indexes and gzipped sitemaps
+ * included) and seed lists ({@code pipeline.crawl.seeds}, {@code pipeline.crawl.seeds-file}). They
+ * are canonicalized and deduplicated, checked against each host's robots.txt, and fetched by
+ * {@code pipeline.crawl.threads} workers. At most {@code pipeline.crawl.per-host-connections}
+ * requests run against one host at a time, and each waits {@code pipeline.crawl.per-host-delay-ms}
+ * (or the host's Crawl-delay, if longer) after the previous one finished; a 429 or 503 doubles the
+ * host's delay. The politeness slot covers the fetch only, preprocessing and embedding run outside it.
+ * <p>
+ * Each page replaces its previously stored chunks through {@link UrlController#processPage}. Trial
+ * report URLs are skipped (load mode owns them), and pages are fetched live, not through the HTML
+ * snapshot archive, which is keyed by NCT ID. The run stops early within the pipeline budget.
+ */
+@Component
+public class SiteCrawler {
+    private static final Logger LOG = LoggerFactory.getLogger(SiteCrawler.class);
+
+    private static final int MAX_SITEMAP_DEPTH = 3;
+    private static final Duration MAX_HOST_DELAY = Duration.ofMinutes(1);
+    private static final Pattern LIST_SEPARATOR = Pattern.compile("[\\s,]+");
+    private static final Pattern NON_HTML = Pattern.compile(
+            "(?i).*\\.(pdf|docx?|xlsx?|pptx?|zip|gz|tgz|tar|png|jpe?g|gif|svg|ico|mp3|mp4|avi|mov|csv|tsv|txt|xml|json|css|js)$");
+
+    private final UrlController urlController;
+    private final HttpPageFetcher fetcher;
+    private final RefreshScheduler refreshScheduler;
+    private final VectorStore openaiVectorStore;
+
+    // Sitemap or sitemap index URLs, comma or whitespace separated
+    @Value("${pipeline.crawl.sitemaps:}")
+    private String sitemaps;
+
+    // Page URLs, comma or whitespace separated
+    @Value("${pipeline.crawl.seeds:}")
+    private String seeds;
+
+    // File with one page URL per line ('#' starts a comment)
+    @Value("${pipeline.crawl.seeds-file:}")
+    private String seedsFile;
+
+    @Value("${pipeline.crawl.threads:8}")
+    private int threads;
+
+    @Value("${pipeline.crawl.per-host-connections:2}")
+    private int perHostConnections;
+
+    @Value("${pipeline.crawl.per-host-delay-ms:500}")
+    private long perHostDelayMs;
+
+    // Maximum pages per run (0 = unlimited)
+    @Value("${pipeline.crawl.max-pages:0}")
+    private int maxPages;
+
+    @Value("${pipeline.http.user-agent:clinical-trials-rag-load-pipeline/1.0}")
+    private String userAgent;
+
+    public SiteCrawler(UrlController urlController,
+                       HttpPageFetcher fetcher,
+                       RefreshScheduler refreshScheduler,
+                       @Qualifier("openaiVectorStore") VectorStore openaiVectorStore) {
+        this.urlController = urlController;
+        this.fetcher = fetcher;
+        this.refreshScheduler = refreshScheduler;
+        this.openaiVectorStore = openaiVectorStore;
+    }
+
+    public void crawl() {
+        Set<String> urls = collectUrls();
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("Crawl mode found no URLs; set pipeline.crawl.sitemaps, seeds or seeds-file");
+        }
+
+        // Trial reports are loaded per trial, binary files are not pages
+        int skipped = 0;
+        int disallowed = 0;
+        Map<String, RobotsTxt> robots = new HashMap<>();
+        PoliteQueue queue = new PoliteQueue(perHostConnections);
+        for (String url : urls) {
+            if (UrlController.isClinicalTrialUrl(url) || NON_HTML.matcher(URI.create(url).getRawPath()).matches()) {
+                skipped++;
+                continue;
+            }
+            RobotsTxt rules = robots.computeIfAbsent(originOf(url), this::fetchRobots);
+            if (!rules.isAllowed(url)) {
+                LOG.debug("Disallowed by robots.txt: {}", url);
+                disallowed++;
+                continue;
+            }
+            if (maxPages > 0 && queue.size() >= maxPages) {
+                break;
+            }
+            queue.add(UrlCanonicalizer.hostOf(url), url, hostDelay(rules));
+        }
+        int total = queue.size();
+        LOG.info("Crawling {} pages on {} hosts with {} threads ({} skipped, {} disallowed by robots.txt)",
+                total, queue.hostCount(), threads, skipped, disallowed);
+
+        RefreshScheduler.Budget budget = refreshScheduler.startBudget(
+                openaiVectorStore instanceof PostgresVectorStoreOpenAI store ? store::getEmbeddingTokens : () -> 0L);
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, "crawl-" + threadCount.incrementAndGet()));
+        for (int i = 0; i < threads; i++) {
+            workers.execute(() -> work(queue, budget, processed, failed));
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Crawl interrupted", e);
+        }
+
+        LOG.info("Crawl complete. Total: {}, Processed: {}, Failed: {}, Deferred: {}",
+                total, processed.get(), failed.get(), queue.size());
+    }
+
+    private void work(PoliteQueue queue, RefreshScheduler.Budget budget, AtomicInteger processed, AtomicInteger failed) {
+        try {
+            while (true) {
+                String exhausted = budget.exhausted();
+                if (exhausted != null) {
+                    if (queue.close()) {
+                        LOG.warn("Stopping after {}m and {} embedding tokens ({}), {} pages deferred to the next run",
+                                budget.elapsed().toMinutes(), budget.tokensUsed(), exhausted, queue.size());
+                    }
+                    return;
+                }
+
+                PoliteQueue.Claim claim = queue.take();
+                if (claim == null) {
+                    return;
+                }
+
+                TrialIngestEvent event = IngestEvents.beginTrial(claim.url());
+                Document page;
+                boolean throttled = false;
+                try {
+                    page = fetcher.load(claim.url());
+                } catch (HttpStatusException e) {
+                    throttled = e.getStatusCode() == 429 || e.getStatusCode() == 503;
+                    LOG.error("HTTP {} fetching page: {}", e.getStatusCode(), claim.url());
+                    page = null;
+                } catch (IOException e) {
+                    LOG.error("Error fetching page: {}", claim.url(), e);
+                    page = null;
+                } finally {
+                    queue.release(claim);
+                }
+                if (throttled) {
+                    queue.backOff(claim);
+                }
+
+                Document fetched = page;
+                boolean stored = fetched != null && urlController.processPage(claim.url(), ignored -> fetched);
+                IngestEvents.endTrial(event, stored ? "PROCESSED" : "FAILED");
+                (stored ? processed : failed).incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Canonical, deduplicated page URLs from the sitemaps and seed lists, in listing order
+     */
+    private Set<String> collectUrls() {
+        Set<String> listed = new LinkedHashSet<>();
+        for (String sitemap : split(sitemaps)) {
+            try {
+                readSitemap(sitemap, 0, listed);
+            } catch (IOException e) {
+                LOG.error("Error reading sitemap: {}", sitemap, e);
+            }
+        }
+        listed.addAll(split(seeds));
+        if (!seedsFile.isBlank()) {
+            try {
+                Files.readAllLines(Path.of(seedsFile)).stream()
+                        .map(line -> line.replaceFirst("#.*", "").trim())
+                        .filter(line -> !line.isEmpty())
+                        .forEach(listed::add);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read seeds file " + seedsFile, e);
+            }
+        }
+
+        Set<String> urls = new LinkedHashSet<>();
+        for (String url : listed) {
+            String canonical = UrlCanonicalizer.canonicalize(url);
+            if (canonical == null) {
+                LOG.warn("Skipping URL that is not http(s): {}", url);
+            } else {
+                urls.add(canonical);
+            }
+        }
+        LOG.info("Collected {} unique URLs from {} listed", urls.size(), listed.size());
+        return urls;
+    }
+
+    /**
+     * Add the page URLs of a sitemap (XML, gzipped XML or plain text), following sitemap indexes
+     */
+    private void readSitemap(String url, int depth, Set<String> pages) throws IOException {
+        RawPage raw = fetcher.fetch(url);
+        byte[] body = raw.body();
+        InputStream in = new ByteArrayInputStream(body);
+        if (body.length > 1 && (body[0] & 0xff) == 0x1f && (body[1] & 0xff) == 0x8b) {
+            in = new GZIPInputStream(in);
+        }
+        Document xml = Jsoup.parse(in, raw.charset(), raw.url(), Parser.xmlParser());
+
+        List<Element> children = xml.select("sitemapindex > sitemap > loc");
+        List<Element> locations = xml.select("urlset > url > loc");
+        LOG.info("Sitemap {}: {} pages, {} child sitemaps", url, locations.size(), children.size());
+
+        for (Element child : children) {
+            if (depth + 1 > MAX_SITEMAP_DEPTH) {
+                LOG.warn("Ignoring sitemap nested deeper than {} levels: {}", MAX_SITEMAP_DEPTH, child.text());
+                continue;
+            }
+            try {
+                readSitemap(child.text().trim(), depth + 1, pages);
+            } catch (IOException e) {
+                LOG.error("Error reading sitemap: {}", child.text(), e);
+            }
+        }
+        locations.forEach(loc -> pages.add(loc.text().trim()));
+
+        // A text sitemap is one URL per line
+        if (children.isEmpty() && locations.isEmpty()) {
+            Arrays.stream(xml.wholeText().split("\\s+"))
+                    .filter(line -> line.startsWith("http://") || line.startsWith("https://"))
+                    .forEach(pages::add);
+        }
+    }
+
+    /**
+     * robots.txt of one origin: missing (4xx) allows everything, unreachable disallows everything
+     */
+    private RobotsTxt fetchRobots(String origin) {
+        String url = origin + "/robots.txt";
+        try {
+            RobotsTxt rules = RobotsTxt.parse(new String(fetcher.fetch(url).body(), StandardCharsets.UTF_8), userAgent);
+            LOG.info("Read {}{}", url, rules.crawlDelay() != null ? " (Crawl-delay " + rules.crawlDelay().toMillis() + "ms)" : "");
+            return rules;
+        } catch (HttpStatusException e) {
+            if (e.getStatusCode() >= 400 && e.getStatusCode() < 500) {
+                LOG.info("No robots.txt at {} (HTTP {}), all pages allowed", origin, e.getStatusCode());
+                return RobotsTxt.ALLOW_ALL;
+            }
+            LOG.warn("robots.txt at {} unavailable (HTTP {}), skipping the host", origin, e.getStatusCode());
+            return RobotsTxt.DISALLOW_ALL;
+        } catch (IOException e) {
+            LOG.warn("robots.txt at {} unreachable ({}), skipping the host", origin, e.getMessage());
+            return RobotsTxt.DISALLOW_ALL;
+        }
+    }
+
+    private long hostDelay(RobotsTxt rules) {
+        long delay = perHostDelayMs;
+        if (rules.crawlDelay() != null) {
+            delay = Math.max(delay, Math.min(rules.crawlDelay().toMillis(), MAX_HOST_DELAY.toMillis()));
+        }
+        return TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+
+    private static String originOf(String url) {
+        URI uri = URI.create(url);
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+
+    private static List<String> split(String list) {
+        return list.isBlank() ? List.of() : List.of(LIST_SEPARATOR.split(list.trim()));
+    }
+
+    /**
+     * Per-host queues handing out URLs only to hosts under their connection limit and past their delay
+     */
+    private static final class PoliteQueue {
+        private final Map<String, Host> hosts = new LinkedHashMap<>();
+        private final int connectionsPerHost;
+        private int queued;
+        private boolean closed;
+
+        PoliteQueue(int connectionsPerHost) {
+            this.connectionsPerHost = Math.max(1, connectionsPerHost);
+        }
+
+        synchronized void add(String host, String url, long delayNanos) {
+            hosts.computeIfAbsent(host, h -> new Host(delayNanos)).urls.add(url);
+            queued++;
+        }
+
+        synchronized int size() {
+            return queued;
+        }
+
+        synchronized int hostCount() {
+            return hosts.size();
+        }
+
+        /**
+         * Next URL that may be fetched now, waiting for one if needed; null once the queue is empty or closed
+         */
+        synchronized Claim take() throws InterruptedException {
+            while (!closed && queued > 0) {
+                long now = System.nanoTime();
+                long wait = Long.MAX_VALUE;
+                for (Host host : hosts.values()) {
+                    if (host.urls.isEmpty() || host.inFlight >= connectionsPerHost) {
+                        continue;
+                    }
+                    long until = host.nextFetchNanos - now;
+                    if (until <= 0) {
+                        host.inFlight++;
+                        queued--;
+                        return new Claim(host, host.urls.poll());
+                    }
+                    wait = Math.min(wait, until);
+                }
+                // Nothing ready: wait for the earliest host delay or for a fetch to finish
+                if (wait == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    TimeUnit.NANOSECONDS.timedWait(this, wait);
+                }
+            }
+            return null;
+        }
+
+        synchronized void release(Claim claim) {
+            claim.host.inFlight--;
+            claim.host.nextFetchNanos = System.nanoTime() + claim.host.delayNanos;
+            notifyAll();
+        }
+
+        synchronized void backOff(Claim claim) {
+            claim.host.delayNanos = Math.min(Math.max(claim.host.delayNanos * 2, TimeUnit.SECONDS.toNanos(1)),
+                    MAX_HOST_DELAY.toNanos());
+            claim.host.nextFetchNanos = System.nanoTime() + claim.host.delayNanos;
+        }
+
+        /**
+         * Stop handing out URLs; true for the first caller only
+         */
+        synchronized boolean close() {
+            boolean first = !closed;
+            closed = true;
+            notifyAll();
+            return first;
+        }
+
+        record Claim(Host host, String url) {
+        }
+
+        static final class Host {
+            private final Deque<String> urls = new ArrayDeque<>();
+            private long delayNanos;
+            private long nextFetchNanos = System.nanoTime();
+            private int inFlight;
+
+            Host(long delayNanos) {
+                this.delayNanos = delayNanos;
+            }
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package edu.mcw.scge.controller;
 
+import edu.mcw.scge.archive.HtmlSnapshotArchive;
+import edu.mcw.scge.profiling.IngestEvents;
+import edu.mcw.scge.profiling.IngestStageEvent;
+import edu.mcw.scge.profiling.TrialIngestEvent;
+import edu.mcw.scge.reader.PageLoader;
 import edu.mcw.scge.reader.UrlDocumentReader;
 import edu.mcw.scge.service.DocumentPreprocessor;
-import edu.mcw.scge.repository.DocumentEmbeddingOpenAIRepository;
-import edu.mcw.scge.model.DocumentEmbeddingOpenAI;
+import edu.mcw.scge.service.RefreshScheduler;
+import edu.mcw.scge.service.TrialRegistry;
+import edu.mcw.scge.model.ClinicalTrial;
+import edu.mcw.scge.vectorstore.PostgresVectorStoreOpenAI;
 import edu.mcw.scge.dao.DataSourceFactory;
 import edu.mcw.scge.dao.implementation.ClinicalTrailDAO;
 import org.slf4j.Logger;
@@ -11,92 +18,170 @@ import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Component
 public class UrlController {
     private static final Logger LOG = LoggerFactory.getLogger(UrlController.class);
 
+    private static final String REPORT_URL = "https://stage.scge.mcw.edu/platform/data/report/clinicalTrials/";
+    private static final String CLINICAL_TRIAL_PREFIX = "CLINICAL TRIAL: ";
+    // document_embeddings.file_name is VARCHAR(255)
+    private static final int MAX_FILENAME_LENGTH = 255;
+
     private final VectorStore openaiVectorStore;
     private final DocumentPreprocessor preprocessor;
-    private final DocumentEmbeddingOpenAIRepository repository;
+    private final TrialRegistry trialRegistry;
+    private final PageLoader pageLoader;
+    private final ObjectProvider<HtmlSnapshotArchive> archiveProvider;
+    private final RefreshScheduler refreshScheduler;
+    private final TransactionTemplate replaceTransaction;
+
+    // Keep a trial's chunks when its report text has not changed since the last ingest
+    @Value("${pipeline.skip-unchanged:false}")
+    private boolean skipUnchanged;
 
     public UrlController(@Qualifier("openaiVectorStore") VectorStore openaiVectorStore,
                          DocumentPreprocessor preprocessor,
-                         DocumentEmbeddingOpenAIRepository repository){
+                         TrialRegistry trialRegistry,
+                         PageLoader pageLoader,
+                         ObjectProvider<HtmlSnapshotArchive> archiveProvider,
+                         RefreshScheduler refreshScheduler,
+                         PlatformTransactionManager transactionManager){
         this.openaiVectorStore = openaiVectorStore;
         this.preprocessor = preprocessor;
-        this.repository = repository;
+        this.trialRegistry = trialRegistry;
+        this.pageLoader = pageLoader;
+        this.archiveProvider = archiveProvider;
+        this.refreshScheduler = refreshScheduler;
+        this.replaceTransaction = new TransactionTemplate(transactionManager);
     }
 
     public void loadClinicalTrials() {
         LOG.info("Starting clinical trials loading process");
+        loadClinicalTrials(refreshScheduler.prioritize(getCurationNctIds()));
+    }
 
+    /**
+     * Get NCT IDs from scgeplatformcur database
+     */
+    public List<String> getCurationNctIds() {
         try {
-            // Get NCT IDs from scgeplatformcur database
             DataSource curationDS = DataSourceFactory.getInstance().getScgePlatformDataSource();
             ClinicalTrailDAO dao = new ClinicalTrailDAO(curationDS);
             List<String> nctIds = dao.getAllNctIds();
             LOG.info("Retrieved {} NCT IDs from scgeplatformcur database", nctIds.size());
+            return nctIds;
+        } catch (Exception e) {
+            LOG.error("Error during clinical trials loading", e);
+            throw new RuntimeException("Failed to load clinical trials: " + e.getMessage(), e);
+        }
+    }
 
-            List<String> processed = new ArrayList<>();
-            List<String> failed = new ArrayList<>();
-            List<String> overwritten = new ArrayList<>();
+    /**
+     * Rebuild every archived trial from its latest HTML snapshot, without fetching any page
+     */
+    public void replayClinicalTrials() {
+        HtmlSnapshotArchive archive = archiveProvider.getIfAvailable();
+        if (archive == null) {
+            throw new IllegalStateException("Replay mode requires pipeline.archive.dir");
+        }
 
-            for (String nctId : nctIds) {
-                try {
-                    if (nctId == null || nctId.trim().isEmpty()) {
-                        LOG.warn("Skipping empty nctId");
-                        continue;
-                    }
+        List<String> nctIds = new ArrayList<>();
+        try {
+            for (String key : archive.keys()) {
+                // Archives written before only trial reports were archived may index other pages too
+                String url = archive.latest(key).url();
+                if (isClinicalTrialUrl(url)) {
+                    nctIds.add(key);
+                } else {
+                    LOG.warn("Skipping archived page that is not a trial report: {}", url);
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Error reading HTML snapshot archive", e);
+            throw new RuntimeException("Failed to read snapshot archive: " + e.getMessage(), e);
+        }
+        LOG.info("Replaying {} trials from HTML snapshot archive", nctIds.size());
 
-                    nctId = nctId.trim();
-                    String url = "https://stage.scge.mcw.edu/platform/data/report/clinicalTrials/" + nctId;
+        loadClinicalTrials(nctIds);
+    }
 
-                    LOG.info("Processing trial: {}", nctId);
+    /**
+     * Refresh the given trials in order, stopping early once the run's time or token budget is spent
+     */
+    public void loadClinicalTrials(List<String> nctIds) {
+        loadClinicalTrials(nctIds, this::processTrial);
+    }
 
-                    // Check if already exists in vector store
-                    List<DocumentEmbeddingOpenAI> existing = repository.findByFileName("CLINICAL TRIAL: " + nctId);
-                    boolean isOverwrite = !existing.isEmpty();
+    /**
+     * Refresh the given trials in order through the given per-trial processor, within the run's budget
+     */
+    public void loadClinicalTrials(List<String> nctIds, Function<String, TrialOutcome> processor) {
+        try {
+            // One registry read up front; per-trial existence checks are answered from memory
+            trialRegistry.load();
+            RefreshScheduler.Budget budget = refreshScheduler.startBudget(
+                    openaiVectorStore instanceof PostgresVectorStoreOpenAI store ? store::getEmbeddingTokens : () -> 0L);
 
-                    // If exists, delete existing entries first
-                    if (isOverwrite) {
-                        for (DocumentEmbeddingOpenAI doc : existing) {
-                            repository.delete(doc);
-                        }
-                        LOG.info("Deleted {} existing entries for trial: {}", existing.size(), nctId);
-                        overwritten.add(nctId);
-                    }
+            List<String> processed = new ArrayList<>();
+            List<String> failed = new ArrayList<>();
+            List<String> overwritten = new ArrayList<>();
+            List<String> unchanged = new ArrayList<>();
+            int deferred = 0;
+
+            for (int i = 0; i < nctIds.size(); i++) {
+                String exhausted = budget.exhausted();
+                if (exhausted != null) {
+                    deferred = nctIds.size() - i;
+                    LOG.warn("Stopping after {}m and {} embedding tokens ({}), {} trials deferred to the next run",
+                            budget.elapsed().toMinutes(), budget.tokensUsed(), exhausted, deferred);
+                    break;
+                }
 
-                    boolean success = processUrlInternal(url);
+                String nctId = nctIds.get(i);
+                if (nctId == null || nctId.trim().isEmpty()) {
+                    LOG.warn("Skipping empty nctId");
+                    continue;
+                }
 
-                    if (success) {
+                nctId = nctId.trim();
+                switch (processor.apply(nctId)) {
+                    case NEW:
                         processed.add(nctId);
-                        LOG.info("Successfully processed trial: {} ({})", nctId, isOverwrite ? "overwritten" : "new");
-                    } else {
+                        break;
+                    case OVERWRITTEN:
+                        processed.add(nctId);
+                        overwritten.add(nctId);
+                        break;
+                    case UNCHANGED:
+                        unchanged.add(nctId);
+                        break;
+                    default:
                         failed.add(nctId);
-                        LOG.error("Failed to process trial: {}", nctId);
-                    }
-
-                } catch (Exception e) {
-                    String safeNctId = nctId != null ? nctId.trim() : "unknown";
-                    failed.add(safeNctId);
-                    LOG.error("Exception processing trial: {}", safeNctId, e);
                 }
             }
 
-            LOG.info("Clinical trials processing complete. Total: {}, Processed: {}, Overwritten: {}, Failed: {}",
-                    nctIds.size(), processed.size(), overwritten.size(), failed.size());
+            LOG.info("Clinical trials processing complete. Total: {}, Processed: {}, Overwritten: {}, Unchanged: {}, Failed: {}, Deferred: {}",
+                    nctIds.size(), processed.size(), overwritten.size(), unchanged.size(), failed.size(), deferred);
             LOG.info("Processed trials: {}", processed);
             LOG.info("Overwritten trials: {}", overwritten);
             LOG.info("Failed trials: {}", failed);
@@ -107,22 +192,207 @@ public class UrlController {
         }
     }
 
-    private boolean processUrlInternal(String urlString) {
+    /**
+     * Replace the stored chunks of one trial with a fresh fetch of its report page
+     */
+    public TrialOutcome processTrial(String nctId) {
+        String url = REPORT_URL + nctId;
+        return processTrial(nctId, () -> readDocuments(url, Map.of("nct_id", nctId)));
+    }
+
+    /**
+     * Replace the stored chunks of one trial with report text rendered outside the pipeline, e.g.
+     * read from the curation database; null content counts as a failure like an unreadable page
+     */
+    public TrialOutcome processTrialContent(String nctId, String content) {
+        String url = REPORT_URL + nctId;
+        return processTrial(nctId, () -> {
+            if (content == null || content.isEmpty()) {
+                LOG.error("No report content for trial: {}", nctId);
+                return List.of();
+            }
+            Map<String, Object> metadata = Map.of(
+                    "source", url,
+                    "title", CLINICAL_TRIAL_PREFIX + nctId,
+                    "type", "curation-db"
+            );
+            return prepareDocuments(url, List.of(new Document(content, metadata)), Map.of("nct_id", nctId));
+        });
+    }
+
+    private TrialOutcome processTrial(String nctId, Supplier<List<Document>> reader) {
+        TrialIngestEvent event = IngestEvents.beginTrial(nctId);
+        TrialOutcome outcome = TrialOutcome.FAILED;
+        try {
+            outcome = ingestTrial(nctId, event, reader);
+            return outcome;
+        } finally {
+            IngestEvents.endTrial(event, outcome.name());
+        }
+    }
+
+    private TrialOutcome ingestTrial(String nctId, TrialIngestEvent event, Supplier<List<Document>> reader) {
+        if (!(openaiVectorStore instanceof PostgresVectorStoreOpenAI store)) {
+            throw new IllegalStateException("Trial ingest requires the Postgres vector store");
+        }
+
+        try {
+            String url = REPORT_URL + nctId;
+
+            LOG.info("Processing trial: {}", nctId);
+
+            // Read and clean the report before touching what is already stored
+            List<Document> preprocessedDocs = reader.get();
+            if (preprocessedDocs.isEmpty()) {
+                LOG.error("Failed to process trial: {}", nctId);
+                return failed(nctId);
+            }
+            String contentHash = TrialRegistry.contentHash(preprocessedDocs.stream()
+                    .map(Document::getContent)
+                    .collect(Collectors.joining("\n")));
+
+            // Check if already exists in the trial registry (a row without an ingest only records failures)
+            ClinicalTrial existing = trialRegistry.get(nctId);
+            boolean isOverwrite = existing != null && existing.getLastIngestedAt() != null;
+            boolean contentChanged = !isOverwrite || !contentHash.equals(existing.getContentHash());
+
+            if (isOverwrite && skipUnchanged && !contentChanged) {
+                LOG.info("Trial {} is unchanged since {}, keeping its {} chunks",
+                        nctId, existing.getLastIngestedAt(), existing.getChunkCount());
+                trialRegistry.recordUnchanged(existing);
+                return TrialOutcome.UNCHANGED;
+            }
+
+            String fileName = CLINICAL_TRIAL_PREFIX + nctId;
+            LocalDateTime lastChangedAt = contentChanged ? LocalDateTime.now() : existing.getLastChangedAt();
+            if (existing == null) {
+                // The row the new chunks reference; until the ingest is recorded it only counts failures
+                trialRegistry.register(nctId, fileName, url, contentHash, lastChangedAt);
+            }
+
+            // Store the new chunks next to the old ones, outside any transaction: embedding calls hold
+            // no locks, and unchanged chunks are deduplicated against the old rows instead of re-embedded
+            List<String> previousIds = store.getDocumentIds(fileName);
+            int chunkCount;
+            try {
+                chunkCount = storeChunks(preprocessedDocs);
+            } catch (RuntimeException e) {
+                discardNewChunks(store, fileName, previousIds);
+                throw e;
+            }
+
+            // Then swap in one short transaction without API calls: the old chunks go, the registry follows
+            replaceTransaction.executeWithoutResult(status -> {
+                store.delete(previousIds);
+                ClinicalTrial trial = trialRegistry.register(nctId, fileName, url, contentHash, lastChangedAt);
+                trialRegistry.recordIngest(trial, chunkCount);
+            });
+            event.setSizes(characters(preprocessedDocs), chunkCount);
+
+            LOG.info("Successfully processed trial: {} ({})", nctId, isOverwrite ? "overwritten" : "new");
+            return isOverwrite ? TrialOutcome.OVERWRITTEN : TrialOutcome.NEW;
+
+        } catch (Exception e) {
+            LOG.error("Exception processing trial: {}", nctId, e);
+            return failed(nctId);
+        }
+    }
+
+    /**
+     * Replace the stored chunks of a generic (non-trial) page, read through the given loader.
+     * <p>
+     * The new chunks are stored before the old ones are deleted, so chunks whose text did not change
+     * are deduplicated against the old rows and inherit their embeddings instead of being embedded again.
+     *
+     * @return false if the page could not be read or stored
+     */
+    public boolean processPage(String url, PageLoader loader) {
+        if (!(openaiVectorStore instanceof PostgresVectorStoreOpenAI store)) {
+            throw new IllegalStateException("Page refresh requires the Postgres vector store");
+        }
+
+        String fileName = extractFilenameFromUrl(url);
+        if (fileName.length() > MAX_FILENAME_LENGTH) {
+            LOG.warn("Skipping page, its filename is longer than {} characters: {}", MAX_FILENAME_LENGTH, url);
+            return false;
+        }
+
+        try {
+            List<Document> preprocessedDocs = readDocuments(url, Map.of(), loader);
+            if (preprocessedDocs.isEmpty()) {
+                LOG.error("Failed to process page: {}", url);
+                return false;
+            }
+
+            List<String> previousIds = store.getDocumentIds(fileName);
+            int chunkCount = storeChunks(preprocessedDocs);
+            store.delete(previousIds);
+
+            LOG.info("Successfully processed page: {} ({} chunks, {} replaced)", url, chunkCount, previousIds.size());
+            return true;
+
+        } catch (Exception e) {
+            LOG.error("Exception processing page: {}", url, e);
+            return false;
+        }
+    }
+
+    // A trial whose new chunks could not all be stored keeps only its previous ones
+    private void discardNewChunks(PostgresVectorStoreOpenAI store, String fileName, List<String> previousIds) {
+        try {
+            List<String> newIds = new ArrayList<>(store.getDocumentIds(fileName));
+            newIds.removeAll(new HashSet<>(previousIds));
+            store.delete(newIds);
+        } catch (Exception e) {
+            LOG.warn("Could not remove partially stored chunks of {}: {}", fileName, e.getMessage());
+        }
+    }
+
+    private TrialOutcome failed(String nctId) {
         try {
-            // Fetch content from URL
-            UrlDocumentReader documentReader = new UrlDocumentReader(urlString);
+            trialRegistry.recordFailure(nctId, CLINICAL_TRIAL_PREFIX + nctId, REPORT_URL + nctId);
+        } catch (Exception e) {
+            LOG.warn("Could not record failure of trial {}: {}", nctId, e.getMessage());
+        }
+        return TrialOutcome.FAILED;
+    }
+
+    /**
+     * Fetch a URL and preprocess its content; empty if nothing usable could be read
+     */
+    private List<Document> readDocuments(String urlString, Map<String, Object> extraMetadata) {
+        return readDocuments(urlString, extraMetadata, pageLoader);
+    }
+
+    private List<Document> readDocuments(String urlString, Map<String, Object> extraMetadata, PageLoader loader) {
+        try {
+            // Fetch content from URL over the shared HTTP client
+            UrlDocumentReader documentReader = new UrlDocumentReader(urlString, loader);
             List<Document> documents = documentReader.get();
 
             if (documents.isEmpty()) {
                 LOG.error("Failed to fetch content from URL: {}", urlString);
-                return false;
+                return List.of();
             }
+            return prepareDocuments(urlString, documents, extraMetadata);
 
+        } catch (Exception e) {
+            LOG.error("Error processing URL: {}", urlString, e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Add the filename and extra metadata to the documents read for a URL and preprocess them
+     */
+    private List<Document> prepareDocuments(String urlString, List<Document> documents, Map<String, Object> extraMetadata) {
+        try {
             // Fix the metadata issue - add filename by creating new documents with mutable metadata
             List<Document> documentsWithFilename = documents.stream()
                     .map(doc -> {
                         Map<String, Object> mutableMetadata = new HashMap<>(doc.getMetadata());
                         mutableMetadata.put("filename", extractFilenameFromUrl(urlString));
+                        mutableMetadata.putAll(extraMetadata);
                         return new Document(doc.getContent(), mutableMetadata);
                     })
                     .collect(Collectors.toList());
@@ -135,31 +405,49 @@ public class UrlController {
 
             if (preprocessedDocs.isEmpty()) {
                 LOG.error("No usable content after preprocessing");
-                throw new RuntimeException("Document preprocessing failed - no usable content found");
             }
+            return preprocessedDocs;
 
-            // STEP 2: Split into chunks with correct Spring AI settings
-            TokenTextSplitter splitter = TokenTextSplitter.builder()
-                    .withChunkSize(800)                // Target chunk size in tokens
-                    .withMinChunkSizeChars(200)        // Minimum characters per chunk
-                    .withMinChunkLengthToEmbed(50)     // Minimum length to embed
-                    .withMaxNumChunks(10000)           // Maximum number of chunks
-                    .withKeepSeparator(true)           // Keep separators for readability
-                    .build();
-
-            List<Document> splitDocuments = splitter.apply(preprocessedDocs);
-            LOG.debug("Split into {} chunks after preprocessing", splitDocuments.size());
+        } catch (Exception e) {
+            LOG.error("Error preprocessing content of URL: {}", urlString, e);
+            return List.of();
+        }
+    }
 
-            // Add to OpenAI vector store
-            openaiVectorStore.add(splitDocuments);
-            LOG.debug("Successfully added {} URL chunks to OpenAI vector store", splitDocuments.size());
+    /**
+     * Split preprocessed documents into chunks and embed them into the vector store
+     */
+    private int storeChunks(List<Document> preprocessedDocs) {
+        // STEP 2: Split into chunks with correct Spring AI settings
+        TokenTextSplitter splitter = TokenTextSplitter.builder()
+                .withChunkSize(800)                // Target chunk size in tokens
+                .withMinChunkSizeChars(200)        // Minimum characters per chunk
+                .withMinChunkLengthToEmbed(50)     // Minimum length to embed
+                .withMaxNumChunks(10000)           // Maximum number of chunks
+                .withKeepSeparator(true)           // Keep separators for readability
+                .build();
+
+        IngestStageEvent split = IngestEvents.stage(IngestEvents.SPLIT);
+        List<Document> splitDocuments = splitter.apply(preprocessedDocs);
+        split.end(-1, characters(splitDocuments), splitDocuments.size());
+        LOG.debug("Split into {} chunks after preprocessing", splitDocuments.size());
+
+        // Add to OpenAI vector store
+        openaiVectorStore.add(splitDocuments);
+        LOG.debug("Successfully added {} URL chunks to OpenAI vector store", splitDocuments.size());
+
+        return splitDocuments.size();
+    }
 
-            return true;
+    private static long characters(List<Document> documents) {
+        return documents.stream().mapToLong(doc -> doc.getContent().length()).sum();
+    }
 
-        } catch (Exception e) {
-            LOG.error("Error processing URL: {}", urlString, e);
-            return false;
-        }
+    /**
+     * Whether a URL is a clinical trial report page, which is loaded per trial rather than as a generic page
+     */
+    public static boolean isClinicalTrialUrl(String urlString) {
+        return UrlDocumentReader.isClinicalTrialUrl(urlString);
     }
 
     private String extractFilenameFromUrl(String urlString) {
@@ -168,8 +456,7 @@ public class UrlController {
             String path = url.getPath();
 
             // Check if this is a clinical trial URL
-            boolean isClinicalTrialUrl = urlString.contains("/clinicalTrials/report/") ||
-                                         urlString.contains("/report/clinicalTrials/");
+            boolean isClinicalTrialUrl = isClinicalTrialUrl(urlString);
 
             String filename;
             if (path != null && !path.isEmpty() && !path.equals("/")) {
@@ -186,7 +473,7 @@ public class UrlController {
 
             // For clinical trials, prefix with "CLINICAL TRIAL: " for identification
             if (isClinicalTrialUrl) {
-                return "CLINICAL TRIAL: " + filename;
+                return CLINICAL_TRIAL_PREFIX + filename;
             } else {
                 return filename + ":" + urlString;
             }
@@ -195,4 +482,11 @@ public class UrlController {
             return "webpage_" + System.currentTimeMillis() + ":" + urlString;
         }
     }
+
+    public enum TrialOutcome {
+        NEW,
+        OVERWRITTEN,
+        UNCHANGED,
+        FAILED
+    }
 }
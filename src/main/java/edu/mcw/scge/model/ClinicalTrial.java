@@ -0,0 +1,127 @@
+package edu.mcw.scge.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "clinical_trials")
+public class ClinicalTrial {
+    @Id
+    @Column(name = "nct_id")
+    private String nctId;
+
+    // "CLINICAL TRIAL: <nct_id>", the file_name carried by each of the trial's chunks
+    @Column(name = "file_name")
+    private String fileName;
+
+    @Column(name = "source_url", columnDefinition = "text")
+    private String sourceUrl;
+
+    // SHA-256 of the preprocessed report text
+    @Column(name = "content_hash")
+    private String contentHash;
+
+    @Column(name = "chunk_count")
+    private int chunkCount;
+
+    @Column(name = "last_ingested_at")
+    private LocalDateTime lastIngestedAt;
+
+    // Last ingest that found different content than the one before
+    @Column(name = "last_changed_at")
+    private LocalDateTime lastChangedAt;
+
+    // Last successful refresh, whether or not the content had changed
+    @Column(name = "last_checked_at")
+    private LocalDateTime lastCheckedAt;
+
+    // Failed attempts since the last successful refresh
+    @Column(name = "failure_count")
+    private int failureCount;
+
+    @Column(name = "last_failed_at")
+    private LocalDateTime lastFailedAt;
+
+    public ClinicalTrial() {}
+
+    // Getters and Setters
+    public String getNctId() {
+        return nctId;
+    }
+
+    public void setNctId(String nctId) {
+        this.nctId = nctId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getSourceUrl() {
+        return sourceUrl;
+    }
+
+    public void setSourceUrl(String sourceUrl) {
+        this.sourceUrl = sourceUrl;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public void setChunkCount(int chunkCount) {
+        this.chunkCount = chunkCount;
+    }
+
+    public LocalDateTime getLastIngestedAt() {
+        return lastIngestedAt;
+    }
+
+    public void setLastIngestedAt(LocalDateTime lastIngestedAt) {
+        this.lastIngestedAt = lastIngestedAt;
+    }
+
+    public LocalDateTime getLastChangedAt() {
+        return lastChangedAt;
+    }
+
+    public void setLastChangedAt(LocalDateTime lastChangedAt) {
+        this.lastChangedAt = lastChangedAt;
+    }
+
+    public LocalDateTime getLastCheckedAt() {
+        return lastCheckedAt;
+    }
+
+    public void setLastCheckedAt(LocalDateTime lastCheckedAt) {
+        this.lastCheckedAt = lastCheckedAt;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(int failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    public LocalDateTime getLastFailedAt() {
+        return lastFailedAt;
+    }
+
+    public void setLastFailedAt(LocalDateTime lastFailedAt) {
+        this.lastFailedAt = lastFailedAt;
+    }
+}
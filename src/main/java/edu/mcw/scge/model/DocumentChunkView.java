@@ -0,0 +1,17 @@
+package edu.mcw.scge.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a chunk row without its embedding vector
+ */
+public interface DocumentChunkView {
+
+    Long getId();
+
+    String getChunk();
+
+    String getFileName();
+
+    LocalDateTime getCreatedAt();
+}
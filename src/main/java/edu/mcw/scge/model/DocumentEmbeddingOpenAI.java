@@ -14,7 +14,8 @@ public class DocumentEmbeddingOpenAI {
     private Long id;
 
     @Type(PGvectorType.class)
-    @Column(name = "embedding", columnDefinition = "vector(1536)")
+    // Dimensions are those declared on the column (vector(N)); the reembed migration re-creates it
+    @Column(name = "embedding", columnDefinition = "vector")
     private PGvector embedding;
 
     @Column(columnDefinition = "text")
@@ -26,6 +27,21 @@ public class DocumentEmbeddingOpenAI {
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
+    // Owning trial (clinical_trials.nct_id), null for non-trial pages
+    @Column(name = "nct_id")
+    private String nctId;
+
+    // SHA-256 of the normalized chunk text
+    @Column(name = "content_hash")
+    private String contentHash;
+
+    @Column(name = "simhash")
+    private Long simhash;
+
+    // Canonical row this chunk duplicates; such rows have no embedding (and no chunk text if exact)
+    @Column(name = "duplicate_of")
+    private Long duplicateOf;
+
     public DocumentEmbeddingOpenAI() {}
 
     // Getters and Setters
@@ -68,4 +84,36 @@ public class DocumentEmbeddingOpenAI {
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
+
+    public String getNctId() {
+        return nctId;
+    }
+
+    public void setNctId(String nctId) {
+        this.nctId = nctId;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Long getSimhash() {
+        return simhash;
+    }
+
+    public void setSimhash(Long simhash) {
+        this.simhash = simhash;
+    }
+
+    public Long getDuplicateOf() {
+        return duplicateOf;
+    }
+
+    public void setDuplicateOf(Long duplicateOf) {
+        this.duplicateOf = duplicateOf;
+    }
 }
@@ -0,0 +1,98 @@
+package edu.mcw.scge.profiling;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Optional JFR recording of one pipeline run, written to {@code pipeline.jfr.file} when the run ends.
+ * <p>
+ * The recording uses the JDK's {@code pipeline.jfr.settings} configuration ("profile" by default)
+ * with allocation sampling raised to {@code pipeline.jfr.allocation-throttle} and stack traces on,
+ * plus the {@link TrialIngestEvent} and {@link IngestStageEvent}s. In JDK Mission Control, the
+ * allocation samples of a thread during a stage event's time span are that stage's allocations,
+ * which ties GC pressure to trials and stages.
+ * <p>
+ * The on-disk recording keeps at most {@code pipeline.jfr.max-age-minutes} and
+ * {@code pipeline.jfr.max-size-mb} of data, so a long daemon run writes its most recent window.
+ */
+@Component
+public class FlightRecording {
+    private static final Logger LOG = LoggerFactory.getLogger(FlightRecording.class);
+
+    // Where to write the recording (empty = no recording)
+    @Value("${pipeline.jfr.file:}")
+    private String file;
+
+    @Value("${pipeline.jfr.settings:profile}")
+    private String settings;
+
+    // Allocation samples per second (the "profile" configuration takes 300/s)
+    @Value("${pipeline.jfr.allocation-throttle:1000/s}")
+    private String allocationThrottle;
+
+    // Oldest data the recording keeps (0 = unlimited)
+    @Value("${pipeline.jfr.max-age-minutes:360}")
+    private long maxAgeMinutes;
+
+    // Most data the recording keeps (0 = unlimited)
+    @Value("${pipeline.jfr.max-size-mb:1024}")
+    private long maxSizeMb;
+
+    private Recording recording;
+
+    public void start() {
+        if (file.isBlank()) {
+            return;
+        }
+
+        try {
+            recording = new Recording(Configuration.getConfiguration(settings));
+            recording.setName("clinical-trials-rag-load-pipeline");
+            recording.enable("jdk.ObjectAllocationSample").with("throttle", allocationThrottle).withStackTrace();
+            recording.enable(TrialIngestEvent.class);
+            recording.enable(IngestStageEvent.class);
+            recording.setToDisk(true);
+            if (maxAgeMinutes > 0) {
+                recording.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+            }
+            if (maxSizeMb > 0) {
+                recording.setMaxSize(maxSizeMb * 1024 * 1024);
+            }
+            recording.start();
+            LOG.info("Started JFR recording ({} settings, allocation samples {}, keeping {} minutes/{} MB), " +
+                    "writing {} at the end of the run", settings, allocationThrottle, maxAgeMinutes, maxSizeMb, file);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to start JFR recording with settings " + settings, e);
+        }
+    }
+
+    /**
+     * Stop the recording, if one was started, and write it to the configured file
+     */
+    public void stop() {
+        if (recording == null) {
+            return;
+        }
+
+        Path path = Path.of(file);
+        try (Recording finished = recording) {
+            recording = null;
+            finished.stop();
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            finished.dump(path);
+            LOG.info("Wrote JFR recording to {} ({} bytes)", path, Files.size(path));
+        } catch (Exception e) {
+            LOG.error("Failed to write JFR recording to {}", path, e);
+        }
+    }
+}
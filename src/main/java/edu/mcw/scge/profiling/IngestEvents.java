@@ -0,0 +1,51 @@
+package edu.mcw.scge.profiling;
+
+/**
+ * Factory of the ingestion JFR events, tagging them with the trial the current thread works on.
+ * <p>
+ * Events cost a field check while no recording has them enabled, so the hot path is always
+ * instrumented; see {@link FlightRecording} for recording a run.
+ */
+public final class IngestEvents {
+
+    public static final String FETCH = "fetch";
+    public static final String PARSE = "parse";
+    public static final String EXTRACT = "extract";
+    public static final String CLEAN = "clean";
+    public static final String SPLIT = "split";
+    public static final String EMBED = "embed";
+    public static final String PERSIST = "persist";
+
+    private static final ThreadLocal<String> CURRENT_TRIAL = new ThreadLocal<>();
+
+    private IngestEvents() {
+    }
+
+    /**
+     * Start the ingest of a trial (or page) on this thread; stage events tag themselves with it until
+     * the event is ended with {@link #endTrial}
+     */
+    public static TrialIngestEvent beginTrial(String nctId) {
+        CURRENT_TRIAL.set(nctId);
+        TrialIngestEvent event = new TrialIngestEvent();
+        event.nctId = nctId;
+        event.begin();
+        return event;
+    }
+
+    public static void endTrial(TrialIngestEvent event, String outcome) {
+        CURRENT_TRIAL.remove();
+        event.end(outcome);
+    }
+
+    /**
+     * Start a stage of the current trial; end it with {@link IngestStageEvent#end}
+     */
+    public static IngestStageEvent stage(String stage) {
+        IngestStageEvent event = new IngestStageEvent();
+        event.nctId = CURRENT_TRIAL.get();
+        event.stage = stage;
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,49 @@
+package edu.mcw.scge.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One ingestion stage of one trial or page, see {@link IngestEvents#stage(String)}
+ */
+@Name("edu.mcw.scge.IngestStage")
+@Label("Ingest Stage")
+@Category({"SCGE Pipeline", "Ingestion"})
+@Description("One stage (fetch, parse, extract, clean, split, embed, persist) of ingesting a trial")
+@StackTrace(false)
+public class IngestStageEvent extends Event {
+
+    @Label("NCT ID")
+    @Description("Trial being ingested, or the URL of a crawled page; empty outside an ingest (e.g. query embedding)")
+    String nctId;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes = -1;
+
+    @Label("Characters")
+    long characters = -1;
+
+    @Label("Chunks")
+    int chunks = -1;
+
+    /**
+     * End the stage and commit it with the sizes it handled (-1 where a size does not apply)
+     */
+    public void end(long bytes, long characters, int chunks) {
+        if (shouldCommit()) {
+            this.bytes = bytes;
+            this.characters = characters;
+            this.chunks = chunks;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package edu.mcw.scge.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The whole ingest of one trial or crawled page; its stages are {@link IngestStageEvent}s on the same thread
+ */
+@Name("edu.mcw.scge.TrialIngest")
+@Label("Trial Ingest")
+@Category({"SCGE Pipeline", "Ingestion"})
+@Description("Fetching, cleaning, splitting, embedding and storing one trial or crawled page")
+@StackTrace(false)
+public class TrialIngestEvent extends Event {
+
+    @Label("NCT ID")
+    @Description("Trial, or the URL of a crawled page")
+    String nctId;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Characters")
+    @Description("Preprocessed text of the page")
+    long characters = -1;
+
+    @Label("Chunks")
+    int chunks = -1;
+
+    /**
+     * Record the size of what was ingested, once it is known
+     */
+    public void setSizes(long characters, int chunks) {
+        this.characters = characters;
+        this.chunks = chunks;
+    }
+
+    void end(String outcome) {
+        if (shouldCommit()) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package edu.mcw.scge.reader;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Single-pass extractor for clinical trial report pages.
+ * <p>
+ * The document is walked exactly once. Junk subtrees (scripts, navigation, chat widgets) are
+ * detached the moment they are reached instead of being selected and removed up front, and the
+ * NCTID, title, section tables and external links are collected on the way. The rendered text is
+ * the same "--- CLINICAL TRIAL ---" / "=== Section ===" / "Label: value" layout the selector based
+ * extractor produced for the (flat) report tables, written through {@link TrialTextWriter}.
+ * <p>
+ * Every piece of output is placed when its element starts and its text is taken when the element
+ * ends, so rows of nested tables, nested cells and nested list items come out in document order
+ * like the selector results did.
+ * <p>
+ * After {@link #scan(Document)} the document no longer contains junk elements, so callers can fall
+ * back to the generic extractor on the same DOM when the page turns out not to be a trial report.
+ */
+public class ClinicalTrialExtractor implements NodeFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(ClinicalTrialExtractor.class);
+
+    private static final Set<String> JUNK_TAGS = Set.of("script", "style", "iframe", "noscript", "nav", "footer");
+
+    private static final Pattern PARENTHESIZED = Pattern.compile("\\(.*?\\)");
+
+    // Output parts in document order, and the parts whose text is taken when their element ends
+    private final List<Part> parts = new ArrayList<>();
+    private final Deque<Part> pendingText = new ArrayDeque<>();
+
+    // Page detection
+    private boolean trialMarkup;
+
+    // Side navigation is kept in the DOM but never contributes content
+    private Element sidenav;
+
+    // Title
+    private Element titleElement;
+    private String title;
+
+    // Sections: a div.dynamic-heading followed by sibling report tables
+    private Element sectionParent;
+    private Element sectionDiv;
+    private Part sectionPart;
+    private boolean sectionHeadingSeen;
+    private Element collectingTable;
+    private int sectionCount;
+    private int tableCount;
+
+    // Report table rows (NCTID lookup and section tables)
+    private int reportTableDepth;
+    private final List<Part> reportRows = new ArrayList<>();
+    private final List<Part> openRows = new ArrayList<>();
+    private String nctId;
+
+    // External links: h5.link-type-heading followed by ul.external-links-list
+    private Element pendingLinkHeading;
+    private Element linkList;
+
+    private ClinicalTrialExtractor() {}
+
+    /**
+     * Walk the document once, removing junk subtrees and collecting the clinical trial fields.
+     */
+    public static ClinicalTrialExtractor scan(Document doc) {
+        ClinicalTrialExtractor extractor = new ClinicalTrialExtractor();
+        NodeTraversor.filter(extractor, doc);
+        extractor.nctId = extractor.findNctId();
+        return extractor;
+    }
+
+    /**
+     * True if the page carries any of the clinical trial report markers
+     */
+    public boolean hasTrialMarkup() {
+        return trialMarkup;
+    }
+
+    public String getNctId() {
+        return nctId;
+    }
+
+    /**
+     * Render the collected fields in the clinical trial text layout
+     */
+    public String getContent() {
+        TrialTextWriter writer = new TrialTextWriter();
+
+        LOG.debug("Extracted NCTID: {}", nctId);
+        writer.nctId(nctId);
+
+        if (titleElement != null) {
+            LOG.debug("Extracted title: {}", title);
+            writer.title(title);
+        } else {
+            LOG.warn("No h2.brief-title found");
+        }
+
+        LOG.debug("Found {} sections with {} tables", sectionCount, tableCount);
+        for (Part part : parts) {
+            switch (part.kind) {
+                case SECTION -> writer.section(part.text);
+                case ROW -> {
+                    // Rows with a label and a value, output EVERYTHING - even if value is empty
+                    if (part.cells.size() >= 2 && !part.cells.get(0).text.isEmpty()) {
+                        writer.field(part.cells.get(0).text, part.cells.get(1).text);
+                    }
+                }
+                case LINK_TYPE -> writer.linkGroup(part.text);
+                default -> writer.link(part.text);
+            }
+        }
+
+        String result = writer.getContent();
+        LOG.info("Total extracted content length: {} chars", result.length());
+        return result;
+    }
+
+    @Override
+    public FilterResult head(Node node, int depth) {
+        if (!(node instanceof Element)) {
+            return FilterResult.CONTINUE;
+        }
+        Element element = (Element) node;
+
+        if (isJunk(element)) {
+            return FilterResult.REMOVE;
+        }
+
+        if (isTrialMarker(element)) {
+            trialMarkup = true;
+        }
+
+        if (sidenav != null) {
+            return FilterResult.CONTINUE;
+        }
+        if (element.hasClass("sidenav")) {
+            sidenav = element;
+            return FilterResult.CONTINUE;
+        }
+
+        // The element right after a link heading decides whether that heading has a list
+        if (pendingLinkHeading != null && element.parent() == pendingLinkHeading.parent()) {
+            if (element.nameIs("ul") && element.hasClass("external-links-list")) {
+                linkList = element;
+            }
+            pendingLinkHeading = null;
+        }
+
+        if (element.hasClass("dynamic-heading")) {
+            if (element.nameIs("div")) {
+                sectionParent = element.parent();
+                sectionDiv = element;
+                sectionPart = new Part(Kind.SECTION);
+                parts.add(sectionPart);
+                sectionHeadingSeen = false;
+                sectionCount++;
+            } else if (element.parent() == sectionParent) {
+                sectionParent = null;
+            }
+        } else if (element.parent() == sectionParent && isReportTable(element)) {
+            collectingTable = element;
+            tableCount++;
+        }
+
+        if (sectionDiv != null && !sectionHeadingSeen && element.nameIs("h3") && element.hasClass("ctSubHeading")) {
+            pendingText.push(sectionPart.takeTextOf(element));
+            sectionHeadingSeen = true;
+        }
+
+        if (titleElement == null && element.nameIs("h2") && element.hasClass("brief-title")) {
+            titleElement = element;
+        }
+
+        if (element.nameIs("h5") && element.hasClass("link-type-heading")) {
+            Part linkType = new Part(Kind.LINK_TYPE);
+            parts.add(linkType);
+            pendingText.push(linkType.takeTextOf(element));
+        } else if (linkList != null && element.nameIs("li")) {
+            Part link = new Part(Kind.LINK);
+            parts.add(link);
+            pendingText.push(link.takeTextOf(element));
+        }
+
+        // A row's cells are all the td elements inside it, nested ones included, as in tr.select("td")
+        if (isReportTable(element)) {
+            reportTableDepth++;
+        } else if (reportTableDepth > 0 && element.nameIs("tr")) {
+            Part row = new Part(Kind.ROW);
+            row.source = element;
+            reportRows.add(row);
+            openRows.add(row);
+            if (collectingTable != null) {
+                parts.add(row);
+            }
+        } else if (element.nameIs("td") && !openRows.isEmpty()) {
+            Part cell = new Part(Kind.CELL);
+            for (Part row : openRows) {
+                row.cells.add(cell);
+            }
+            pendingText.push(cell.takeTextOf(element));
+        }
+
+        return FilterResult.CONTINUE;
+    }
+
+    @Override
+    public FilterResult tail(Node node, int depth) {
+        if (!(node instanceof Element)) {
+            return FilterResult.CONTINUE;
+        }
+        Element element = (Element) node;
+
+        if (sidenav != null) {
+            if (element == sidenav) {
+                sidenav = null;
+            }
+            return FilterResult.CONTINUE;
+        }
+
+        // Text is taken on the way out, once any junk inside the element has been detached
+        if (!pendingText.isEmpty() && pendingText.peek().source == element) {
+            pendingText.pop().text = element.text().trim();
+        }
+
+        if (!openRows.isEmpty() && openRows.get(openRows.size() - 1).source == element) {
+            openRows.remove(openRows.size() - 1);
+        } else if (isReportTable(element)) {
+            reportTableDepth--;
+            if (element == collectingTable) {
+                collectingTable = null;
+            }
+        } else if (element == sectionDiv) {
+            LOG.debug("Processing section: {}", sectionPart.text);
+            sectionDiv = null;
+        } else if (element == titleElement) {
+            title = element.text().trim();
+        } else if (element.nameIs("h5") && element.hasClass("link-type-heading")) {
+            if (!element.text().trim().isEmpty()) {
+                pendingLinkHeading = element;
+            }
+        } else if (element == linkList) {
+            linkList = null;
+        }
+
+        return FilterResult.CONTINUE;
+    }
+
+    /**
+     * NCTID value of the first report table row labelled NCTID, in document order
+     */
+    private String findNctId() {
+        for (Part row : reportRows) {
+            if (row.cells.size() >= 2 && row.cells.get(0).text.equalsIgnoreCase("NCTID")) {
+                return PARENTHESIZED.matcher(row.cells.get(1).text).replaceAll("").trim();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isJunk(Element element) {
+        return JUNK_TAGS.contains(element.normalName()) ||
+               element.hasClass("navbar") ||
+               element.hasClass("chat-popup") ||
+               "messageVue".equals(element.id());
+    }
+
+    private static boolean isTrialMarker(Element element) {
+        return isReportTable(element) ||
+               (element.nameIs("h3") && element.hasClass("ctSubHeading")) ||
+               (element.nameIs("h2") && element.hasClass("brief-title"));
+    }
+
+    private static boolean isReportTable(Element element) {
+        return element.nameIs("table") && element.hasClass("ctReportTable");
+    }
+
+    private enum Kind { SECTION, ROW, CELL, LINK_TYPE, LINK }
+
+    /**
+     * One piece of output: a section heading, a table row (with its cells), a link type or a link
+     */
+    private static final class Part {
+        private final Kind kind;
+        private final List<Part> cells = new ArrayList<>(2);
+        private Element source;
+        private String text = "";
+
+        Part(Kind kind) {
+            this.kind = kind;
+        }
+
+        Part takeTextOf(Element element) {
+            source = element;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package edu.mcw.scge.reader;
+
+import edu.mcw.scge.profiling.IngestEvents;
+import edu.mcw.scge.profiling.IngestStageEvent;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Page loader backed by one shared {@link HttpClient}.
+ * <p>
+ * The client keeps its connections pooled across trials and negotiates HTTP/2 where the server
+ * supports it. Responses are requested compressed and decoded as a stream that jsoup parses
+ * directly, so the body is never materialized as a byte array or String first.
+ */
+public class HttpPageFetcher implements PageLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpPageFetcher.class);
+
+    private static final int DECODE_BUFFER_SIZE = 16 * 1024;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final String userAgent;
+
+    public HttpPageFetcher(HttpClient client, Duration requestTimeout, String userAgent) {
+        this.client = client;
+        this.requestTimeout = requestTimeout;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * The fetch stage ends with the response headers; the body streams into the parser, so the parse
+     * stage includes its transfer
+     */
+    @Override
+    public Document load(String url) throws IOException {
+        IngestStageEvent fetch = IngestEvents.stage(IngestEvents.FETCH);
+        HttpResponse<InputStream> response = send(url);
+        fetch.end(response.headers().firstValueAsLong("Content-Length").orElse(-1), -1, -1);
+
+        checkStatus(response, url);
+
+        IngestStageEvent parse = IngestEvents.stage(IngestEvents.PARSE);
+        try (CountingInputStream body = new CountingInputStream(decode(response))) {
+            LOG.debug("Fetched {} over {} (status {}, encoding {})", url, response.version(), response.statusCode(),
+                    response.headers().firstValue("Content-Encoding").orElse("identity"));
+
+            // Charset from the Content-Type header, otherwise jsoup sniffs the BOM / meta tag
+            String charset = charsetOf(response);
+            Document document = Jsoup.parse(body, charset, response.uri().toString());
+            parse.end(body.count, -1, -1);
+            return document;
+        }
+    }
+
+    /**
+     * Fetch the decoded page bytes without parsing them, for callers that keep a copy of the page
+     */
+    public RawPage fetch(String url) throws IOException {
+        IngestStageEvent fetch = IngestEvents.stage(IngestEvents.FETCH);
+        HttpResponse<InputStream> response = send(url);
+        checkStatus(response, url);
+
+        try (InputStream body = decode(response)) {
+            RawPage page = new RawPage(response.uri().toString(), charsetOf(response), body.readAllBytes());
+            fetch.end(page.body().length, -1, -1);
+            return page;
+        }
+    }
+
+    /**
+     * Issue a GET request on the shared client and return the undecoded body stream
+     */
+    HttpResponse<InputStream> send(String url) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Accept", "text/html,application/xhtml+xml;q=0.9,*/*;q=0.8")
+                .header("Accept-Encoding", "gzip, deflate")
+                .header("User-Agent", userAgent)
+                .GET()
+                .build();
+
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+    }
+
+    /**
+     * Throw HttpStatusException for a non-2xx response before its body is decoded, since error bodies
+     * are often empty or not in the advertised encoding and the crawler backs off on the status
+     */
+    static void checkStatus(HttpResponse<InputStream> response, String url) throws IOException {
+        int status = response.statusCode();
+        if (status < 200 || status >= 300) {
+            response.body().close();
+            throw new HttpStatusException("HTTP error fetching URL", status, url);
+        }
+    }
+
+    /**
+     * Wrap the body in a streaming decoder matching the Content-Encoding header
+     */
+    static InputStream decode(HttpResponse<InputStream> response) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding")
+                .orElse("identity").trim().toLowerCase(Locale.ROOT);
+
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(response.body(), DECODE_BUFFER_SIZE);
+            case "deflate":
+                return new InflaterInputStream(response.body());
+            case "identity":
+            case "":
+                return response.body();
+            default:
+                response.body().close();
+                throw new IOException("Unsupported Content-Encoding '" + encoding + "' from " + response.uri());
+        }
+    }
+
+    // Decoded bytes read by the parser, for the parse stage event
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    static String charsetOf(HttpResponse<?> response) {
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        for (String param : contentType.split(";")) {
+            String trimmed = param.trim();
+            if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                String charset = trimmed.substring(8).replace("\"", "").trim();
+                return charset.isEmpty() ? null : charset;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,14 @@
+package edu.mcw.scge.reader;
+
+import org.jsoup.nodes.Document;
+
+import java.io.IOException;
+
+/**
+ * Loads and parses the HTML page behind a URL
+ */
+@FunctionalInterface
+public interface PageLoader {
+
+    Document load(String url) throws IOException;
+}
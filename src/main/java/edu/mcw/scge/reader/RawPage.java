@@ -0,0 +1,11 @@
+package edu.mcw.scge.reader;
+
+/**
+ * Decoded (uncompressed) bytes of a fetched page with the charset announced by the server
+ *
+ * @param url     final URL after redirects
+ * @param charset charset from the Content-Type header, or null to let jsoup sniff it
+ * @param body    decoded response body
+ */
+public record RawPage(String url, String charset, byte[] body) {
+}
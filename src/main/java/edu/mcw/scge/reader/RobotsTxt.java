@@ -0,0 +1,148 @@
+package edu.mcw.scge.reader;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * The rules of one host's robots.txt (RFC 9309) that apply to the pipeline's user agent.
+ * <p>
+ * The groups naming our product token apply, or the {@code *} groups if none does. The longest
+ * matching Allow/Disallow pattern decides, Allow winning a tie; {@code *} and a trailing {@code $}
+ * are supported. The non-standard Crawl-delay of the chosen groups is kept as a politeness hint.
+ */
+public final class RobotsTxt {
+
+    public static final RobotsTxt ALLOW_ALL = new RobotsTxt(List.of(), null);
+    public static final RobotsTxt DISALLOW_ALL = new RobotsTxt(List.of(new Rule(false, "/", Pattern.compile("/"))), null);
+
+    private final List<Rule> rules;
+    private final Duration crawlDelay;
+
+    private RobotsTxt(List<Rule> rules, Duration crawlDelay) {
+        this.rules = rules;
+        this.crawlDelay = crawlDelay;
+    }
+
+    /**
+     * Parse a robots.txt body for the given User-Agent header (its product token, before any '/')
+     */
+    public static RobotsTxt parse(String content, String userAgent) {
+        String token = userAgent.split("[/\\s]", 2)[0].toLowerCase(Locale.ROOT);
+
+        Group ours = new Group();
+        Group wildcard = new Group();
+        List<String> agents = new ArrayList<>();
+        boolean inRules = false;
+
+        for (String rawLine : content.split("\\r?\\n|\\r")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            if (key.equals("user-agent")) {
+                // A user-agent line after rules starts a new group
+                if (inRules) {
+                    agents.clear();
+                    inRules = false;
+                }
+                agents.add(value.toLowerCase(Locale.ROOT));
+                continue;
+            }
+            if (!key.equals("allow") && !key.equals("disallow") && !key.equals("crawl-delay")) {
+                continue;
+            }
+            inRules = true;
+
+            for (String agent : agents) {
+                Group group = agent.equals("*") ? wildcard : agent.equals(token) ? ours : null;
+                if (group != null) {
+                    group.add(key, value);
+                }
+            }
+        }
+
+        Group chosen = ours.matched ? ours : wildcard;
+        return new RobotsTxt(List.copyOf(chosen.rules), chosen.crawlDelay);
+    }
+
+    /**
+     * Whether the path and query of the URL may be fetched
+     */
+    public boolean isAllowed(String url) {
+        URI uri = URI.create(url);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+
+        Rule decisive = null;
+        for (Rule rule : rules) {
+            if (rule.regex.matcher(path).lookingAt() && (decisive == null ||
+                    rule.pattern.length() > decisive.pattern.length() ||
+                    rule.pattern.length() == decisive.pattern.length() && rule.allow)) {
+                decisive = rule;
+            }
+        }
+        return decisive == null || decisive.allow;
+    }
+
+    /**
+     * Crawl-delay requested for our user agent, or null if none
+     */
+    public Duration crawlDelay() {
+        return crawlDelay;
+    }
+
+    private record Rule(boolean allow, String pattern, Pattern regex) {
+
+        static Rule of(boolean allow, String pattern) {
+            StringBuilder regex = new StringBuilder();
+            boolean anchored = pattern.endsWith("$");
+            String body = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+            for (String literal : body.split("\\*", -1)) {
+                if (!regex.isEmpty()) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(literal));
+            }
+            if (anchored) {
+                regex.append('$');
+            }
+            return new Rule(allow, pattern, Pattern.compile(regex.toString()));
+        }
+    }
+
+    private static final class Group {
+        private final List<Rule> rules = new ArrayList<>();
+        private Duration crawlDelay;
+        private boolean matched;
+
+        void add(String key, String value) {
+            matched = true;
+            switch (key) {
+                case "allow":
+                case "disallow":
+                    // An empty Disallow allows everything, which is the default anyway
+                    if (!value.isEmpty()) {
+                        rules.add(Rule.of(key.equals("allow"), value));
+                    }
+                    break;
+                default:
+                    try {
+                        crawlDelay = Duration.ofMillis((long) (Double.parseDouble(value) * 1000));
+                    } catch (NumberFormatException e) {
+                        // Ignore an unparseable Crawl-delay like any other unknown line
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package edu.mcw.scge.reader;
+
+import java.util.regex.Pattern;
+
+/**
+ * Renders one trial in the clinical trial text layout that chunks and embeddings are built from:
+ * <pre>
+ *   --- CLINICAL TRIAL: NCT01234567 ---
+ *
+ *   Title: ...
+ *
+ *   === Section ===
+ *   Label: value
+ *
+ *   === Resources/Links ===
+ *
+ *   Link type:
+ *   - link text
+ * </pre>
+ * Shared by the HTML report extractor and the curation database reader, so a trial reads the same
+ * whichever way it was loaded and unchanged trials keep their content hash across the two.
+ */
+public class TrialTextWriter {
+
+    private static final Pattern VIEW_AT = Pattern.compile("\\(View at.*?\\)");
+    private static final Pattern CLICK_HERE = Pattern.compile("\\(Click here for.*?\\)");
+
+    private String nctId;
+    private String title;
+    private final StringBuilder sections = new StringBuilder();
+    private final StringBuilder links = new StringBuilder();
+    private boolean hasLinks;
+
+    public void nctId(String nctId) {
+        this.nctId = nctId;
+    }
+
+    public void title(String title) {
+        this.title = title;
+    }
+
+    /**
+     * Start a section; "Summary" sections and empty headings add their fields without a heading
+     */
+    public void section(String heading) {
+        String sectionTitle = heading == null ? "" : heading.trim();
+        if (!sectionTitle.isEmpty() && !sectionTitle.equalsIgnoreCase("Summary")) {
+            sections.append("\n=== ").append(sectionTitle).append(" ===\n");
+        }
+    }
+
+    /**
+     * Add a field to the current section; fields are kept even when their value is empty
+     */
+    public void field(String label, String value) {
+        // Clean up common junk from values
+        String cleaned = VIEW_AT.matcher(value == null ? "" : value).replaceAll("").trim();
+        cleaned = CLICK_HERE.matcher(cleaned).replaceAll("").trim();
+        sections.append(label).append(": ").append(cleaned).append("\n");
+    }
+
+    /**
+     * Start a group of external links; any group, even an unnamed one, adds the links section
+     */
+    public void linkGroup(String linkType) {
+        hasLinks = true;
+        String type = linkType == null ? "" : linkType.trim();
+        if (!type.isEmpty()) {
+            links.append("\n").append(type).append(":\n");
+        }
+    }
+
+    public void link(String text) {
+        String itemText = text == null ? "" : text.trim();
+        if (!itemText.isEmpty()) {
+            links.append("- ").append(itemText).append("\n");
+        }
+    }
+
+    public String getContent() {
+        StringBuilder content = new StringBuilder(sections.length() + links.length() + 256);
+
+        if (nctId != null) {
+            content.append("--- CLINICAL TRIAL: ").append(nctId).append(" ---\n\n");
+        }
+        if (title != null && !title.isEmpty()) {
+            content.append("Title: ").append(title).append("\n\n");
+        }
+        content.append(sections);
+        if (hasLinks) {
+            content.append("\n=== Resources/Links ===\n").append(links);
+        }
+        return content.toString().trim();
+    }
+}
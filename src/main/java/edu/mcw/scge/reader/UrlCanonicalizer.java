@@ -0,0 +1,80 @@
+package edu.mcw.scge.reader;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Canonical form of crawl URLs, so that spellings of the same page are fetched and stored once.
+ * <p>
+ * Scheme and host are lower-cased, default ports, fragments and dot segments are removed, an empty
+ * path becomes "/", tracking parameters (utm_*, fbclid, gclid) are dropped and the remaining query
+ * parameters are sorted. Paths keep their case, since servers may treat it as significant.
+ */
+public final class UrlCanonicalizer {
+
+    private UrlCanonicalizer() {
+    }
+
+    /**
+     * Canonical http(s) URL, or null if the string is not one
+     */
+    public static String canonicalize(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        try {
+            URI uri = new URI(url.trim()).normalize();
+            String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+            if (!"http".equals(scheme) && !"https".equals(scheme) || uri.getHost() == null) {
+                return null;
+            }
+
+            int port = uri.getPort();
+            if (port == 80 && scheme.equals("http") || port == 443 && scheme.equals("https")) {
+                port = -1;
+            }
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+
+            StringBuilder canonical = new StringBuilder(scheme).append("://")
+                    .append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (port != -1) {
+                canonical.append(':').append(port);
+            }
+            canonical.append(path);
+
+            String query = canonicalQuery(uri.getRawQuery());
+            if (!query.isEmpty()) {
+                canonical.append('?').append(query);
+            }
+            return canonical.toString();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Host (with a non-default port) of a canonical URL, the unit of crawl politeness
+     */
+    public static String hostOf(String canonicalUrl) {
+        URI uri = URI.create(canonicalUrl);
+        return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    }
+
+    private static String canonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return "";
+        }
+        return Arrays.stream(rawQuery.split("&"))
+                .filter(param -> !param.isEmpty())
+                .filter(param -> !isTrackingParameter(param.split("=", 2)[0].toLowerCase(Locale.ROOT)))
+                .sorted()
+                .collect(Collectors.joining("&"));
+    }
+
+    private static boolean isTrackingParameter(String name) {
+        return name.startsWith("utm_") || name.equals("fbclid") || name.equals("gclid");
+    }
+}
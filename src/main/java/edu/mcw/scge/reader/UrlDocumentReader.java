@@ -1,5 +1,7 @@
 package edu.mcw.scge.reader;
 
+import edu.mcw.scge.profiling.IngestEvents;
+import edu.mcw.scge.profiling.IngestStageEvent;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -14,30 +16,34 @@ import java.util.*;
 public class UrlDocumentReader implements DocumentReader {
     private static final Logger LOG = LoggerFactory.getLogger(UrlDocumentReader.class);
     private final String url;
-    private final int timeout;
+    private final PageLoader pageLoader;
 
     public UrlDocumentReader(String url) {
         this(url, 30000);
     }
 
     public UrlDocumentReader(String url, int timeout) {
+        this(url, pageUrl -> Jsoup.connect(pageUrl).timeout(timeout).get());
+    }
+
+    /**
+     * Read the URL through a shared loader, e.g. the pooled {@link HttpPageFetcher}
+     */
+    public UrlDocumentReader(String url, PageLoader pageLoader) {
         this.url = url;
-        this.timeout = timeout;
+        this.pageLoader = pageLoader;
     }
 
     @Override
     public List<org.springframework.ai.document.Document> get() {
         try {
             LOG.info("Fetching content from URL: {}", url);
-            Document jsoupDoc = Jsoup.connect(url)
-                    .timeout(timeout)
-                    .get();
-
-            // Remove junk elements
-            jsoupDoc.select("script, style, iframe, noscript, nav, footer, .navbar, #messageVue, .chat-popup").remove();
+            Document jsoupDoc = pageLoader.load(url);
 
-            // Detect page type and extract accordingly
+            // Detect page type and extract accordingly (junk elements are removed on the way)
+            IngestStageEvent extract = IngestEvents.stage(IngestEvents.EXTRACT);
             String content = extractContent(jsoupDoc);
+            extract.end(-1, content.length(), -1);
 
             String title = jsoupDoc.title();
 
@@ -62,9 +68,12 @@ public class UrlDocumentReader implements DocumentReader {
      * Detect page type and route to appropriate extractor
      */
     private String extractContent(Document doc) {
-        if (isClinicalTrialPage(doc)) {
+        // One walk strips the junk subtrees and collects the clinical trial fields as it goes
+        ClinicalTrialExtractor trial = ClinicalTrialExtractor.scan(doc);
+
+        if (trial.hasTrialMarkup() || isClinicalTrialUrl(url)) {
             LOG.info("Detected clinical trial page, using specialized extractor");
-            return extractClinicalTrialContent(doc);
+            return trial.getContent();
         } else {
             LOG.info("Generic webpage detected, using generic extractor");
             return extractGenericContent(doc);
@@ -72,88 +81,13 @@ public class UrlDocumentReader implements DocumentReader {
     }
 
     /**
-     * Detect if this is a clinical trial page
+     * Whether a URL is a clinical trial report page
      */
-    private boolean isClinicalTrialPage(Document doc) {
-        return doc.select("table.ctReportTable").size() > 0 ||
-               doc.select("h3.ctSubHeading").size() > 0 ||
-               doc.select("h2.brief-title").size() > 0 ||
-               url.contains("/clinicalTrials/report/") ||
+    public static boolean isClinicalTrialUrl(String url) {
+        return url.contains("/clinicalTrials/report/") ||
                url.contains("/report/clinicalTrials/");
     }
 
-    /**
-     * Extract structured content from clinical trial pages
-     */
-    private String extractClinicalTrialContent(Document doc) {
-        StringBuilder content = new StringBuilder();
-
-        // Remove navigation elements (but NOT form - data is inside form!)
-        doc.select(".sidenav").remove();
-
-        // Extract NCTID
-        String nctId = extractNCTID(doc);
-        LOG.debug("Extracted NCTID: {}", nctId);
-        if (nctId != null) {
-            content.append("--- CLINICAL TRIAL: ").append(nctId).append(" ---\n\n");
-        }
-
-        // Extract title
-        Element mainHeading = doc.select("h2.brief-title").first();
-        if (mainHeading != null) {
-            String title = mainHeading.text().trim();
-            LOG.debug("Extracted title: {}", title);
-            if (!title.isEmpty()) {
-                content.append("Title: ").append(title).append("\n\n");
-            }
-        } else {
-            LOG.warn("No h2.brief-title found");
-        }
-
-        // Extract all sections with their tables
-        Elements sections = doc.select("div.dynamic-heading");
-        LOG.debug("Found {} sections", sections.size());
-
-        for (Element sectionDiv : sections) {
-            Element sectionHeading = sectionDiv.select("h3.ctSubHeading").first();
-            if (sectionHeading != null) {
-                String sectionTitle = sectionHeading.text().trim();
-                LOG.debug("Processing section: {}", sectionTitle);
-                if (!sectionTitle.isEmpty() && !sectionTitle.equalsIgnoreCase("Summary")) {
-                    content.append("\n=== ").append(sectionTitle).append(" ===\n");
-                }
-            }
-
-            // Find tables after this section
-            Element nextElement = sectionDiv.nextElementSibling();
-            int tableCount = 0;
-            while (nextElement != null) {
-                if (nextElement.hasClass("dynamic-heading")) {
-                    break;
-                }
-
-                if (nextElement.tagName().equals("table") && nextElement.hasClass("ctReportTable")) {
-                    String tableData = extractTableData(nextElement);
-                    LOG.debug("Extracted {} chars from table", tableData.length());
-                    content.append(tableData);
-                    tableCount++;
-                }
-
-                nextElement = nextElement.nextElementSibling();
-            }
-            LOG.debug("Extracted {} tables for section", tableCount);
-        }
-
-        // Extract external links
-        String links = extractExternalLinks(doc);
-        LOG.debug("Extracted {} chars from external links", links.length());
-        content.append(links);
-
-        String result = content.toString().trim();
-        LOG.info("Total extracted content length: {} chars", result.length());
-        return result;
-    }
-
     /**
      * Extract content from generic webpages
      */
@@ -225,52 +159,6 @@ public class UrlDocumentReader implements DocumentReader {
         return result;
     }
 
-    /**
-     * Extract NCTID
-     */
-    private String extractNCTID(Document doc) {
-        Elements rows = doc.select("table.ctReportTable tr");
-        for (Element row : rows) {
-            Elements cells = row.select("td");
-            if (cells.size() >= 2) {
-                String label = cells.get(0).text().trim();
-                if (label.equalsIgnoreCase("NCTID")) {
-                    String value = cells.get(1).text();
-                    return value.replaceAll("\\(.*?\\)", "").trim();
-                }
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Extract ALL data from clinical trial table - no filtering
-     */
-    private String extractTableData(Element table) {
-        StringBuilder tableContent = new StringBuilder();
-        Elements rows = table.select("tr");
-
-        for (Element row : rows) {
-            Elements cells = row.select("td");
-
-            if (cells.size() >= 2) {
-                String label = cells.get(0).text().trim();
-                String value = cells.get(1).text().trim();
-
-                // Clean up common junk from values
-                value = value.replaceAll("\\(View at.*?\\)", "").trim();
-                value = value.replaceAll("\\(Click here for.*?\\)", "").trim();
-
-                // Output EVERYTHING - even if value is empty
-                if (!label.isEmpty()) {
-                    tableContent.append(label).append(": ").append(value).append("\n");
-                }
-            }
-        }
-
-        return tableContent.toString();
-    }
-
     /**
      * Extract data from generic tables
      */
@@ -301,40 +189,4 @@ public class UrlDocumentReader implements DocumentReader {
 
         return tableContent.toString();
     }
-
-    /**
-     * Extract external links grouped by type
-     */
-    private String extractExternalLinks(Document doc) {
-        StringBuilder linksContent = new StringBuilder();
-        Elements linkHeadings = doc.select("h5.link-type-heading");
-
-        if (linkHeadings.isEmpty()) {
-            return "";
-        }
-
-        linksContent.append("\n=== Resources/Links ===\n");
-
-        for (Element heading : linkHeadings) {
-            String linkType = heading.text().trim();
-            if (!linkType.isEmpty()) {
-                linksContent.append("\n").append(linkType).append(":\n");
-
-                Element listElement = heading.nextElementSibling();
-                if (listElement != null && listElement.tagName().equals("ul")
-                        && listElement.hasClass("external-links-list")) {
-
-                    Elements listItems = listElement.select("li");
-                    for (Element li : listItems) {
-                        String itemText = li.text().trim();
-                        if (!itemText.isEmpty()) {
-                            linksContent.append("- ").append(itemText).append("\n");
-                        }
-                    }
-                }
-            }
-        }
-
-        return linksContent.toString();
-    }
 }
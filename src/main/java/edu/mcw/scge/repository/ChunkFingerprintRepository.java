@@ -0,0 +1,142 @@
+package edu.mcw.scge.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Fingerprint reads and duplicate bookkeeping for chunk deduplication
+ */
+@Repository
+public class ChunkFingerprintRepository {
+
+    private static final String CANONICAL_PAGE_SQL =
+            "SELECT id, content_hash, simhash FROM document_embeddings " +
+            "WHERE duplicate_of IS NULL AND content_hash IS NOT NULL AND id > ? " +
+            "ORDER BY id LIMIT ?";
+
+    /*
+     * A duplicate locks its canonical row (FOR KEY SHARE) until the duplicate is inserted, and a
+     * delete locks the canonical rows it removes (FOR UPDATE) before handing them over. Whichever
+     * comes second waits: the delete then sees the new duplicate and hands the row over to it, or
+     * the duplicate finds the canonical row gone and looks for another one.
+     */
+    private static final String CANONICAL_BY_HASH_SQL =
+            "SELECT id FROM document_embeddings WHERE content_hash = ? AND duplicate_of IS NULL " +
+            "ORDER BY id LIMIT 1 FOR KEY SHARE";
+
+    private static final String LOCK_CANONICAL_SQL =
+            "SELECT id FROM document_embeddings WHERE id = ? AND duplicate_of IS NULL FOR KEY SHARE";
+
+    private static final String TRIAL_CANONICAL_IDS_SQL =
+            "SELECT id FROM document_embeddings WHERE nct_id = ? AND duplicate_of IS NULL FOR UPDATE";
+
+    private static final String CHUNK_CANONICAL_IDS_SQL =
+            "SELECT id FROM document_embeddings WHERE id = ANY (CAST(? AS bigint[])) AND duplicate_of IS NULL FOR UPDATE";
+
+    /*
+     * Before chunks are deleted, each canonical chunk among them that surviving rows still
+     * reference hands its text and embedding to one of those references (exact duplicates first),
+     * and the remaining references are re-pointed at that heir. The two %s select the deleted
+     * canonical rows c and the surviving rows d.
+     */
+    private static final String PROMOTE_HEIRS_SQL =
+            "WITH heirs AS (" +
+            "  SELECT DISTINCT ON (d.duplicate_of) d.duplicate_of AS old_id, d.id AS new_id " +
+            "  FROM document_embeddings d JOIN document_embeddings c ON c.id = d.duplicate_of " +
+            "  WHERE %1$s AND %2$s " +
+            "  ORDER BY d.duplicate_of, (d.chunk IS NOT NULL), d.id" +
+            "), promoted AS (" +
+            "  UPDATE document_embeddings t " +
+            "  SET chunk = COALESCE(t.chunk, c.chunk), embedding = c.embedding, duplicate_of = NULL " +
+            "  FROM heirs h JOIN document_embeddings c ON c.id = h.old_id " +
+            "  WHERE t.id = h.new_id " +
+            "  RETURNING h.old_id, t.id AS new_id, t.content_hash, t.simhash" +
+            "), repointed AS (" +
+            "  UPDATE document_embeddings d SET duplicate_of = h.new_id " +
+            "  FROM heirs h " +
+            "  WHERE d.duplicate_of = h.old_id AND d.id <> h.new_id AND %2$s " +
+            "  RETURNING d.id" +
+            ") " +
+            "SELECT old_id, new_id, content_hash, simhash FROM promoted";
+
+    private static final String PROMOTE_TRIAL_HEIRS_SQL = String.format(PROMOTE_HEIRS_SQL,
+            "c.nct_id = ?", "d.nct_id IS DISTINCT FROM ?");
+
+    private static final String PROMOTE_CHUNK_HEIRS_SQL = String.format(PROMOTE_HEIRS_SQL,
+            "c.id = ANY (CAST(? AS bigint[]))", "NOT d.id = ANY (CAST(? AS bigint[]))");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ChunkFingerprintRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Keyset page of canonical chunk fingerprints in id order (start with afterId = 0)
+     */
+    public List<Fingerprint> findCanonicalAfterId(long afterId, int limit) {
+        return jdbcTemplate.query(CANONICAL_PAGE_SQL, (rs, rowNum) -> new Fingerprint(
+                rs.getLong("id"),
+                rs.getString("content_hash"),
+                (Long) rs.getObject("simhash")), afterId, limit);
+    }
+
+    /**
+     * Canonical chunk with this exact content hash, or null; the row stays locked against deletes
+     * until the current transaction ends
+     */
+    public Long findCanonicalByHash(String contentHash) {
+        List<Long> ids = jdbcTemplate.queryForList(CANONICAL_BY_HASH_SQL, Long.class, contentHash);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * Whether the chunk still exists as a canonical row; if so it stays locked against deletes
+     * until the current transaction ends
+     */
+    public boolean lockCanonical(long id) {
+        return !jdbcTemplate.queryForList(LOCK_CANONICAL_SQL, Long.class, id).isEmpty();
+    }
+
+    /**
+     * Hand a trial's shared chunks over to their surviving references ahead of deleting the trial
+     *
+     * @return the heirs that took over, and every canonical chunk id the trial held
+     */
+    @Transactional
+    public Handover promoteHeirs(String nctId) {
+        List<Long> canonicalIds = jdbcTemplate.queryForList(TRIAL_CANONICAL_IDS_SQL, Long.class, nctId);
+        return new Handover(canonicalIds, promote(PROMOTE_TRIAL_HEIRS_SQL, nctId));
+    }
+
+    /**
+     * Hand the shared ones among these chunks over to their surviving references ahead of deleting them
+     */
+    @Transactional
+    public Handover promoteHeirs(Collection<Long> chunkIds) {
+        String ids = chunkIds.stream().map(String::valueOf).collect(Collectors.joining(",", "{", "}"));
+        List<Long> canonicalIds = jdbcTemplate.queryForList(CHUNK_CANONICAL_IDS_SQL, Long.class, ids);
+        return new Handover(canonicalIds, promote(PROMOTE_CHUNK_HEIRS_SQL, ids));
+    }
+
+    private List<Heir> promote(String sql, String deleted) {
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new Heir(
+                rs.getLong("old_id"),
+                new Fingerprint(rs.getLong("new_id"), rs.getString("content_hash"), (Long) rs.getObject("simhash"))),
+                deleted, deleted);
+    }
+
+    public record Fingerprint(long id, String contentHash, Long simhash) {
+    }
+
+    public record Heir(long previousId, Fingerprint fingerprint) {
+    }
+
+    public record Handover(List<Long> canonicalIds, List<Heir> heirs) {
+    }
+}
@@ -0,0 +1,48 @@
+package edu.mcw.scge.repository;
+
+import edu.mcw.scge.model.ClinicalTrial;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ClinicalTrialRepository extends JpaRepository<ClinicalTrial, String> {
+
+    // Delete a trial; its chunks are removed by ON DELETE CASCADE
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ClinicalTrial t WHERE t.nctId = :nctId")
+    int deleteTrial(@Param("nctId") String nctId);
+
+    // Record a finished ingest
+    @Transactional
+    @Modifying
+    @Query("UPDATE ClinicalTrial t SET t.chunkCount = :chunkCount, t.lastIngestedAt = :ingestedAt, " +
+            "t.lastCheckedAt = :ingestedAt, t.failureCount = 0 WHERE t.nctId = :nctId")
+    int updateIngested(@Param("nctId") String nctId,
+                       @Param("chunkCount") int chunkCount,
+                       @Param("ingestedAt") LocalDateTime ingestedAt);
+
+    // Record a refresh that found the content unchanged
+    @Transactional
+    @Modifying
+    @Query("UPDATE ClinicalTrial t SET t.lastCheckedAt = :checkedAt, t.failureCount = 0 WHERE t.nctId = :nctId")
+    int updateChecked(@Param("nctId") String nctId, @Param("checkedAt") LocalDateTime checkedAt);
+
+    // Record a failed attempt, creating the registry row for trials that never ingested
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO clinical_trials (nct_id, file_name, source_url, failure_count, last_failed_at) " +
+            "VALUES (:nctId, :fileName, :sourceUrl, 1, :failedAt) " +
+            "ON CONFLICT (nct_id) DO UPDATE SET failure_count = clinical_trials.failure_count + 1, " +
+            "last_failed_at = EXCLUDED.last_failed_at", nativeQuery = true)
+    int upsertFailure(@Param("nctId") String nctId,
+                      @Param("fileName") String fileName,
+                      @Param("sourceUrl") String sourceUrl,
+                      @Param("failedAt") LocalDateTime failedAt);
+}
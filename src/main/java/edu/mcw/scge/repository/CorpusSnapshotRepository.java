@@ -0,0 +1,133 @@
+package edu.mcw.scge.repository;
+
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk table I/O for corpus snapshots, in PostgreSQL's binary COPY format.
+ * <p>
+ * Binary COPY carries vectors in pgvector's send/receive format (4 bytes per dimension) instead of
+ * their text form, and loads without per-row statements. Copies run on the connection of the
+ * surrounding transaction, so an export sees one snapshot of all tables and an import is undone as
+ * a whole if any step fails.
+ */
+@Repository
+public class CorpusSnapshotRepository {
+
+    // Generated columns (chunk_tsv) cannot be copied in; they are recomputed on load
+    private static final String COLUMNS_SQL =
+            "SELECT column_name FROM information_schema.columns " +
+            "WHERE table_schema = current_schema() AND table_name = ? AND is_generated = 'NEVER' " +
+            "ORDER BY ordinal_position";
+
+    // Indexes other than those backing primary key, unique and exclusion constraints
+    private static final String SECONDARY_INDEXES_SQL =
+            "SELECT i.relname, pg_get_indexdef(x.indexrelid) FROM pg_index x " +
+            "JOIN pg_class i ON i.oid = x.indexrelid " +
+            "WHERE x.indrelid = CAST(? AS regclass) " +
+            "AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conindid = x.indexrelid) " +
+            "ORDER BY i.relname";
+
+    private static final String RESET_SEQUENCE_SQL =
+            "SELECT setval(pg_get_serial_sequence(?, 'id'), COALESCE(MAX(id), 0) + 1, false) FROM %s";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CorpusSnapshotRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Copyable columns of a table, in table order
+     */
+    public List<String> columns(String table) {
+        return jdbcTemplate.queryForList(COLUMNS_SQL, String.class, table);
+    }
+
+    /**
+     * Index name to CREATE INDEX statement, for the indexes a bulk load should rebuild
+     */
+    public Map<String, String> secondaryIndexes(String table) {
+        Map<String, String> indexes = new LinkedHashMap<>();
+        jdbcTemplate.query(SECONDARY_INDEXES_SQL, rs -> {
+            indexes.put(rs.getString(1), rs.getString(2));
+        }, table);
+        return indexes;
+    }
+
+    public long count(String table) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Write the table's rows (ordered by orderBy) to out in binary COPY format; returns the row count
+     */
+    public long copyOut(String table, List<String> columns, String orderBy, OutputStream out) {
+        String sql = "COPY (SELECT " + String.join(", ", columns) + " FROM " + table + " ORDER BY " + orderBy +
+                ") TO STDOUT (FORMAT binary)";
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(sql, out);
+            } catch (IOException e) {
+                throw new RuntimeException("COPY out of " + table + " failed", e);
+            }
+        });
+    }
+
+    /**
+     * Load rows in binary COPY format from in; returns the row count
+     */
+    public long copyIn(String table, List<String> columns, InputStream in) {
+        String sql = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN (FORMAT binary)";
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, in);
+            } catch (IOException e) {
+                throw new RuntimeException("COPY into " + table + " failed", e);
+            }
+        });
+    }
+
+    /**
+     * Empty the given tables together (they reference each other)
+     */
+    public void truncate(List<String> tables) {
+        jdbcTemplate.execute("TRUNCATE " + String.join(", ", tables));
+    }
+
+    public void dropIndex(String name) {
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + name);
+    }
+
+    public void createIndex(String definition) {
+        jdbcTemplate.execute(definition);
+    }
+
+    /**
+     * Point the table's id sequence past the highest loaded id
+     */
+    public void resetSequence(String table) {
+        jdbcTemplate.queryForObject(String.format(RESET_SEQUENCE_SQL, table), Long.class, table);
+    }
+
+    /**
+     * Memory for index builds for the rest of the surrounding transaction (e.g. "1GB")
+     */
+    public void setMaintenanceWorkMem(String memory) {
+        jdbcTemplate.queryForObject("SELECT set_config('maintenance_work_mem', ?, true)", String.class, memory);
+    }
+
+    public void analyze(String table) {
+        jdbcTemplate.execute("ANALYZE " + table);
+    }
+}
@@ -0,0 +1,53 @@
+package edu.mcw.scge.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The corpus version counter (corpus_version_seq): bumped by every write to the chunk table, read
+ * before cached searches
+ */
+@Repository
+public class CorpusVersionRepository {
+
+    // A sequence nobody has advanced yet has last_value 1 with is_called false
+    private static final String CURRENT_SQL =
+            "SELECT CASE WHEN is_called THEN last_value ELSE 0 END FROM corpus_version_seq";
+
+    private static final String BUMP_SQL = "SELECT nextval('corpus_version_seq')";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CorpusVersionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public long current() {
+        Long version = jdbcTemplate.queryForObject(CURRENT_SQL, Long.class);
+        return version != null ? version : 0;
+    }
+
+    /**
+     * Move to a new version once the surrounding transaction has committed (right away outside one).
+     * A search that sees the new version therefore also sees the write, and nextval neither locks
+     * nor rolls back, so writers do not wait on each other here
+     */
+    public void bump() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            next();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                next();
+            }
+        });
+    }
+
+    private void next() {
+        jdbcTemplate.queryForObject(BUMP_SQL, Long.class);
+    }
+}
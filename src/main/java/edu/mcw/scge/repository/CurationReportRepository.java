@@ -0,0 +1,171 @@
+package edu.mcw.scge.repository;
+
+import edu.mcw.scge.reader.TrialTextWriter;
+import org.jsoup.Jsoup;
+import org.jsoup.internal.StringUtil;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clinical trial report content read straight from the scgeplatformcur curation database.
+ * <p>
+ * A batch of trials takes three set-based queries against the report views, whatever its size:
+ * <ul>
+ *   <li>{@code ct_report_trial (nct_id, title)} - one row per trial, with the page's title</li>
+ *   <li>{@code ct_report_field (nct_id, section, section_order, label, value, field_order)} - one
+ *       row per label/value row the page's report tables show and no others, so fields the
+ *       template hides are left out, under the heading of their section ("Summary" fields are
+ *       rendered without one). Values are text formatted the way the template prints them
+ *       (dates, numbers)</li>
+ *   <li>{@code ct_report_link (nct_id, link_type, link_type_order, link_text, link_order)} - one
+ *       row per external link, grouped by link type; a link type the page lists without links has
+ *       a single row with a null link_text</li>
+ * </ul>
+ * The views are the contract with the curation schema and are defined in the curation database,
+ * against the tables behind the report template. Values may keep their markup, entities and
+ * whitespace: they are normalized the way the page extractor reads them and rendered with the
+ * same {@link TrialTextWriter} as the page, so views that meet the contract give a trial the same
+ * content hash either way.
+ * Not a Spring bean, since the curation DataSource comes from {@code DataSourceFactory}.
+ */
+public class CurationReportRepository {
+
+    private static final String TRIALS_SQL =
+            "SELECT nct_id, title FROM ct_report_trial WHERE nct_id IN (:nctIds)";
+
+    private static final String FIELDS_SQL =
+            "SELECT nct_id, section, label, value FROM ct_report_field WHERE nct_id IN (:nctIds) " +
+            "ORDER BY nct_id, section_order, field_order";
+
+    private static final String LINKS_SQL =
+            "SELECT nct_id, link_type, link_text FROM ct_report_link WHERE nct_id IN (:nctIds) " +
+            "ORDER BY nct_id, link_type_order, link_order";
+
+    private static final String MISSING_VIEWS_SQL =
+            "SELECT v FROM unnest(ARRAY['ct_report_trial', 'ct_report_field', 'ct_report_link']) AS v " +
+            "WHERE to_regclass(v) IS NULL";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public CurationReportRepository(DataSource curationDataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(curationDataSource);
+    }
+
+    /**
+     * Fail fast when the report views are missing from the curation database
+     */
+    public void verifyViews() {
+        List<String> missing = jdbcTemplate.getJdbcTemplate().queryForList(MISSING_VIEWS_SQL, String.class);
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Curation database lacks the report views " + missing +
+                    "; load-db needs them defined in the curation schema");
+        }
+    }
+
+    /**
+     * Render the report text of a batch of trials
+     *
+     * @return report text by NCT ID, in batch order; trials missing from ct_report_trial are left out
+     */
+    public Map<String, String> findReportContent(List<String> nctIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource("nctIds", nctIds);
+        ReportRenderer renderer = new ReportRenderer(nctIds);
+
+        jdbcTemplate.query(TRIALS_SQL, params, rs -> {
+            renderer.trial(rs.getString("nct_id"), rs.getString("title"));
+        });
+        jdbcTemplate.query(FIELDS_SQL, params, rs -> {
+            renderer.field(rs.getString("nct_id"), rs.getString("section"), rs.getString("label"), rs.getString("value"));
+        });
+        jdbcTemplate.query(LINKS_SQL, params, rs -> {
+            renderer.link(rs.getString("nct_id"), rs.getString("link_type"), rs.getString("link_text"));
+        });
+        return renderer.getContent();
+    }
+
+    /**
+     * Renders rows of the three views, each in view order, into report text
+     */
+    static class ReportRenderer {
+        private final Map<String, TrialTextWriter> writers = new LinkedHashMap<>();
+        // Rows come ordered by trial, so a new heading or link type starts whenever (trial, name) changes
+        private final String[] currentSection = new String[2];
+        private final String[] currentLinkGroup = new String[2];
+
+        ReportRenderer(List<String> nctIds) {
+            for (String nctId : nctIds) {
+                writers.put(nctId, null);
+            }
+        }
+
+        void trial(String nctId, String title) {
+            TrialTextWriter writer = new TrialTextWriter();
+            writer.nctId(nctId);
+            writer.title(pageText(title));
+            writers.put(nctId, writer);
+        }
+
+        void field(String nctId, String section, String label, String value) {
+            TrialTextWriter writer = writers.get(nctId);
+            String fieldLabel = pageText(label);
+            if (writer == null || fieldLabel.isEmpty()) {
+                return;
+            }
+            String heading = pageText(section);
+            if (starts(currentSection, nctId, heading)) {
+                writer.section(heading);
+            }
+            writer.field(fieldLabel, pageText(value));
+        }
+
+        void link(String nctId, String linkType, String text) {
+            TrialTextWriter writer = writers.get(nctId);
+            if (writer == null) {
+                return;
+            }
+            String type = pageText(linkType);
+            if (starts(currentLinkGroup, nctId, type)) {
+                writer.linkGroup(type);
+            }
+            writer.link(pageText(text));
+        }
+
+        private static boolean starts(String[] current, String nctId, String name) {
+            if (nctId.equals(current[0]) && name.equals(current[1])) {
+                return false;
+            }
+            current[0] = nctId;
+            current[1] = name;
+            return true;
+        }
+
+        Map<String, String> getContent() {
+            Map<String, String> content = new LinkedHashMap<>();
+            writers.forEach((nctId, writer) -> {
+                if (writer != null) {
+                    content.put(nctId, writer.getContent());
+                }
+            });
+            return content;
+        }
+    }
+
+    /**
+     * A curation value as the report page shows it: the page emits values as markup, and the extractor
+     * reads them back with jsoup's text(), which drops tags, decodes entities and collapses whitespace
+     */
+    static String pageText(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf('<') < 0 && value.indexOf('&') < 0) {
+            return StringUtil.normaliseWhitespace(value).trim();
+        }
+        return Jsoup.parseBodyFragment(value).body().text().trim();
+    }
+}
@@ -1,31 +1,81 @@
 package edu.mcw.scge.repository;
 
+import edu.mcw.scge.model.DocumentChunkView;
 import edu.mcw.scge.model.DocumentEmbeddingOpenAI;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface DocumentEmbeddingOpenAIRepository extends JpaRepository<DocumentEmbeddingOpenAI, Long> {
+public interface DocumentEmbeddingOpenAIRepository extends JpaRepository<DocumentEmbeddingOpenAI, Long>,
+        DocumentEmbeddingOpenAIRepositoryCustom {
 
-    // Find nearest neighbors using cosine distance
-    @Query(value = "SELECT * FROM document_embeddings ORDER BY embedding <=> CAST(:queryEmbedding AS vector) LIMIT :k", nativeQuery = true)
+    // Rows per JDBC round trip for the Stream variants below
+    String STREAM_FETCH_SIZE = "500";
+
+    String CHUNK_VIEW_SELECT = "SELECT d.id AS id, d.chunk AS chunk, d.fileName AS fileName, d.createdAt AS createdAt " +
+            "FROM DocumentEmbeddingOpenAI d ";
+
+    // Search SQL is kept here so slow searches can be explained with the exact statement that ran
+    String NEAREST_SQL = "SELECT * FROM document_embeddings WHERE embedding IS NOT NULL " +
+            "ORDER BY embedding <=> CAST(:queryEmbedding AS vector) LIMIT :k";
+
+    String NEAREST_WITH_THRESHOLD_SQL = "SELECT * FROM document_embeddings " +
+            "WHERE embedding IS NOT NULL AND (1 - (embedding <=> CAST(:queryEmbedding AS vector))) >= :threshold " +
+            "ORDER BY embedding <=> CAST(:queryEmbedding AS vector) " +
+            "LIMIT :k";
+
+    // The question's terms are OR-ed so a chunk matching any of them gets a lexical rank
+    String HYBRID_SQL = "WITH semantic AS (" +
+            "  SELECT id, row_number() OVER (ORDER BY distance) AS rank FROM (" +
+            "    SELECT id, embedding <=> CAST(:queryEmbedding AS vector) AS distance FROM document_embeddings " +
+            "    WHERE embedding IS NOT NULL " +
+            "    ORDER BY embedding <=> CAST(:queryEmbedding AS vector) LIMIT :candidates) s" +
+            "), lexical AS (" +
+            "  SELECT id, row_number() OVER (ORDER BY score DESC) AS rank FROM (" +
+            "    SELECT d.id, ts_rank_cd(d.chunk_tsv, query, 32) AS score " +
+            "    FROM document_embeddings d, " +
+            "         CAST(replace(CAST(plainto_tsquery('english', :queryText) AS text), '&', '|') AS tsquery) query " +
+            "    WHERE d.chunk_tsv @@ query " +
+            "    ORDER BY score DESC LIMIT :candidates) l" +
+            "), fused AS (" +
+            "  SELECT COALESCE(s.id, l.id) AS id, " +
+            "         COALESCE(1.0 / (:rrfK + s.rank), 0) + COALESCE(1.0 / (:rrfK + l.rank), 0) AS score " +
+            "  FROM semantic s FULL OUTER JOIN lexical l ON s.id = l.id" +
+            ") " +
+            "SELECT d.* FROM document_embeddings d JOIN fused f ON f.id = d.id " +
+            "ORDER BY f.score DESC, d.id " +
+            "LIMIT :k";
+
+    // Find nearest neighbors using cosine distance (duplicate rows carry no embedding of their own)
+    @Query(value = NEAREST_SQL, nativeQuery = true)
     List<DocumentEmbeddingOpenAI> findNearestNeighbors(@Param("queryEmbedding") float[] queryEmbedding, @Param("k") int k);
 
     // Find nearest neighbors with minimum similarity threshold
-    @Query(value = "SELECT * FROM document_embeddings " +
-            "WHERE (1 - (embedding <=> CAST(:queryEmbedding AS vector))) >= :threshold " +
-            "ORDER BY embedding <=> CAST(:queryEmbedding AS vector) " +
-            "LIMIT :k", nativeQuery = true)
+    @Query(value = NEAREST_WITH_THRESHOLD_SQL, nativeQuery = true)
     List<DocumentEmbeddingOpenAI> findNearestNeighborsWithThreshold(
             @Param("queryEmbedding") float[] queryEmbedding,
             @Param("k") int k,
             @Param("threshold") double threshold
     );
 
+    // Random sample of embedded chunks (benchmark queries)
+    @Query(value = "SELECT * FROM document_embeddings WHERE embedding IS NOT NULL ORDER BY random() LIMIT :n", nativeQuery = true)
+    List<DocumentEmbeddingOpenAI> findRandomWithEmbeddings(@Param("n") int n);
+
     // Find by filename
     List<DocumentEmbeddingOpenAI> findByFileName(String fileName);
 
@@ -37,11 +87,88 @@ public interface DocumentEmbeddingOpenAIRepository extends JpaRepository<Documen
     @Query("SELECT COUNT(d) FROM DocumentEmbeddingOpenAI d WHERE d.fileName = :fileName")
     long countByFileName(@Param("fileName") String fileName);
 
-    // Find by chunk containing text (case-insensitive)
+    // Find chunk ids by filename
+    @Query("SELECT d.id FROM DocumentEmbeddingOpenAI d WHERE d.fileName = :fileName")
+    List<Long> findIdsByFileName(@Param("fileName") String fileName);
+
+    // Find by chunk containing text (case-insensitive substring match, scans the whole table)
     @Query("SELECT d FROM DocumentEmbeddingOpenAI d WHERE LOWER(d.chunk) LIKE LOWER(CONCAT('%', :text, '%'))")
     List<DocumentEmbeddingOpenAI> findByChunkContainingIgnoreCase(@Param("text") String text);
 
+    // Full-text search on the indexed chunk_tsv column, best lexical matches first
+    @Query(value = "SELECT d.* FROM document_embeddings d, websearch_to_tsquery('english', :text) query " +
+            "WHERE d.chunk_tsv @@ query " +
+            "ORDER BY ts_rank_cd(d.chunk_tsv, query, 32) DESC " +
+            "LIMIT :k", nativeQuery = true)
+    List<DocumentEmbeddingOpenAI> findByFullText(@Param("text") String text, @Param("k") int k);
+
+    // Hybrid search: reciprocal rank fusion of the cosine-distance ranking and the full-text ranking
+    @Query(value = HYBRID_SQL, nativeQuery = true)
+    List<DocumentEmbeddingOpenAI> findHybrid(
+            @Param("queryEmbedding") float[] queryEmbedding,
+            @Param("queryText") String queryText,
+            @Param("k") int k,
+            @Param("candidates") int candidates,
+            @Param("rrfK") int rrfK
+    );
+
+    // Delete chunks by id
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM DocumentEmbeddingOpenAI d WHERE d.id IN :ids")
+    int deleteByIds(@Param("ids") List<Long> ids);
+
     // Get the most recent documents
     @Query("SELECT d FROM DocumentEmbeddingOpenAI d ORDER BY d.createdAt DESC")
     List<DocumentEmbeddingOpenAI> findAllOrderByCreatedAtDesc();
+
+    /*
+     * Bounded-memory reads.
+     *
+     * The List methods above materialize every matching row, embedding included. The variants
+     * below either stream with a bounded JDBC fetch size (caller must hold a read-only
+     * transaction and close the Stream), return one Slice / keyset page at a time, or use the
+     * DocumentChunkView projection, which never reads the embedding column.
+     */
+
+    // Stream all chunks, most recent first, without embeddings
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(CHUNK_VIEW_SELECT + "ORDER BY d.createdAt DESC, d.id DESC")
+    Stream<DocumentChunkView> streamAllOrderByCreatedAtDesc();
+
+    // Keyset page of the most recent chunks: pass the last row's createdAt and id to get the next page
+    @Query(CHUNK_VIEW_SELECT +
+            "WHERE d.createdAt < :createdAt OR (d.createdAt = :createdAt AND d.id < :id) " +
+            "ORDER BY d.createdAt DESC, d.id DESC")
+    List<DocumentChunkView> findChunksCreatedBefore(@Param("createdAt") LocalDateTime createdAt,
+                                                    @Param("id") long id,
+                                                    Limit limit);
+
+    // Keyset page over the whole table in id order, without embeddings (start with afterId = 0)
+    @Query(CHUNK_VIEW_SELECT + "WHERE d.id > :afterId ORDER BY d.id")
+    List<DocumentChunkView> findChunksAfterId(@Param("afterId") long afterId, Limit limit);
+
+    // Keyset page over the whole table in id order, with embeddings (start with afterId = 0)
+    @Query("SELECT d FROM DocumentEmbeddingOpenAI d WHERE d.id > :afterId ORDER BY d.id")
+    List<DocumentEmbeddingOpenAI> findWithEmbeddingsAfterId(@Param("afterId") long afterId, Limit limit);
+
+    // One page of a file's chunks, without embeddings
+    @Query(CHUNK_VIEW_SELECT + "WHERE d.fileName = :fileName ORDER BY d.id")
+    Slice<DocumentChunkView> findChunksByFileName(@Param("fileName") String fileName, Pageable pageable);
+
+    // Stream chunks containing text (case-insensitive), without embeddings
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(CHUNK_VIEW_SELECT + "WHERE LOWER(d.chunk) LIKE LOWER(CONCAT('%', :text, '%')) ORDER BY d.id")
+    Stream<DocumentChunkView> streamByChunkContainingIgnoreCase(@Param("text") String text);
+
+    // Stream unique filenames
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT DISTINCT d.fileName FROM DocumentEmbeddingOpenAI d")
+    Stream<String> streamDistinctFileNames();
 }
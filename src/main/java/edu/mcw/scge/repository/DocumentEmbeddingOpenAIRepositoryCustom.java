@@ -0,0 +1,72 @@
+package edu.mcw.scge.repository;
+
+import edu.mcw.scge.model.DocumentEmbeddingOpenAI;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queries whose SQL depends on configuration (the embedding dimension count) and therefore cannot
+ * be declared with {@code @Query}
+ */
+public interface DocumentEmbeddingOpenAIRepositoryCustom {
+
+    // Two-phase nearest neighbors: Hamming distance on binary-quantized embeddings picks candidates,
+    // exact cosine distance reranks them (threshold <= 0 disables the similarity filter)
+    List<DocumentEmbeddingOpenAI> findNearestNeighborsQuantized(float[] queryEmbedding, int k, int candidates,
+                                                                double threshold);
+
+    // Nearest neighbors for many query vectors in one statement, one result list per query in input order
+    // (ks[i] and thresholds[i] apply to queryEmbeddings[i]; results carry no embedding)
+    List<List<DocumentEmbeddingOpenAI>> findNearestNeighborsBatch(List<float[]> queryEmbeddings, int[] ks,
+                                                                  double[] thresholds);
+
+    // Nearest distinct trials: the ANN candidate set grouped by trial (nct_id, or file_name for chunks outside
+    // a trial), keeping the best chunksPerTrial chunks of the k trials whose best chunk is closest
+    // (threshold <= 0 disables the similarity filter); rows come ordered by trial rank, then distance
+    List<TrialNeighbor> findNearestTrials(float[] queryEmbedding, int k, int chunksPerTrial, int candidates,
+                                          double threshold);
+
+    // Two-tier nearest neighbors: the nearest trials by trial vector, then the k nearest chunks of those
+    // trials only (threshold <= 0 disables the similarity filter; results carry no embedding)
+    List<DocumentEmbeddingOpenAI> findNearestNeighborsHierarchical(float[] queryEmbedding, int k, int trials,
+                                                                   double threshold);
+
+    // HNSW Hamming index on binary_quantize(embedding), built without blocking writers
+    void createBinaryQuantizedIndex();
+
+    // SQL run by findNearestNeighborsQuantized, and the hnsw.ef_search it sets for a candidate count
+    String quantizedNearestSql(double threshold);
+
+    int efSearchFor(int candidates);
+
+    // SQL run by findNearestTrials, and its parameters
+    String groupedNearestSql(double threshold);
+
+    // SQL run by findNearestNeighborsHierarchical, and its parameters
+    String hierarchicalNearestSql(double threshold);
+
+    Map<String, Object> hierarchicalNearestParams(float[] queryEmbedding, int k, int trials, double threshold);
+
+    Map<String, Object> groupedNearestParams(float[] queryEmbedding, int k, int chunksPerTrial, int candidates,
+                                             double threshold);
+
+    // SQL run by findNearestNeighborsBatch, and its parameters
+    String batchNearestSql();
+
+    Map<String, Object> batchNearestParams(List<float[]> queryEmbeddings, int[] ks, double[] thresholds);
+
+    // EXPLAIN (ANALYZE, BUFFERS) of a search statement with named parameters, one plan line per element
+    // (efSearch > 0 sets hnsw.ef_search for the statement, as findNearestNeighborsQuantized does)
+    List<String> explainAnalyze(String sql, Map<String, Object> params, int efSearch);
+
+    /**
+     * One chunk of a grouped search result
+     *
+     * @param trialRank 1-based rank of the chunk's trial
+     * @param trialKey  nct_id of the chunk, or its file_name if it belongs to no trial
+     * @param distance  cosine distance of the chunk to the query
+     */
+    record TrialNeighbor(int trialRank, String trialKey, double distance, DocumentEmbeddingOpenAI chunk) {
+    }
+}
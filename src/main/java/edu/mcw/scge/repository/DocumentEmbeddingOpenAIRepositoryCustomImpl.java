@@ -0,0 +1,267 @@
+package edu.mcw.scge.repository;
+
+import com.pgvector.PGvector;
+import edu.mcw.scge.model.DocumentEmbeddingOpenAI;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class DocumentEmbeddingOpenAIRepositoryCustomImpl implements DocumentEmbeddingOpenAIRepositoryCustom {
+
+    public static final String BINARY_INDEX = "document_embeddings_embedding_bq_idx";
+
+    // pgvector caps hnsw.ef_search at 1000; below the default of 40 there is nothing to gain
+    private static final int MIN_EF_SEARCH = 40;
+    private static final int MAX_EF_SEARCH = 1000;
+
+    // One LATERAL nearest-neighbor scan per query vector; the threshold filter after the LIMIT gives the
+    // same rows as filtering before it, since rows come ordered by distance
+    private static final String BATCH_NEAREST_SQL =
+            "SELECT q.ord, d.id, d.chunk, d.file_name, d.created_at, d.nct_id " +
+            "FROM unnest(CAST(:vectors AS text[]), CAST(:ks AS int[]), CAST(:thresholds AS float8[])) " +
+            "     WITH ORDINALITY AS q(embedding, k, threshold, ord) " +
+            "CROSS JOIN LATERAL (" +
+            "  SELECT e.id, e.chunk, e.file_name, e.created_at, e.nct_id, " +
+            "         e.embedding <=> CAST(q.embedding AS vector) AS distance " +
+            "  FROM document_embeddings e WHERE e.embedding IS NOT NULL " +
+            "  ORDER BY e.embedding <=> CAST(q.embedding AS vector) " +
+            "  LIMIT q.k) d " +
+            "WHERE q.threshold <= 0 OR (1 - d.distance) >= q.threshold " +
+            "ORDER BY q.ord, d.distance";
+
+    // Trials are ranked by their best candidate chunk; row_number keeps each trial's closest chunks. The ANN
+    // scan only sees canonical rows, so the rows duplicating them join the candidates at the same distance
+    // and a shared chunk counts for every trial that holds it
+    private static final String GROUPED_NEAREST_SQL =
+            "WITH nearest AS (" +
+            "  SELECT id, chunk, file_name, created_at, nct_id, " +
+            "         embedding <=> CAST(:queryEmbedding AS vector) AS distance " +
+            "  FROM document_embeddings WHERE embedding IS NOT NULL " +
+            "  ORDER BY embedding <=> CAST(:queryEmbedding AS vector) " +
+            "  LIMIT :candidates" +
+            "), candidates AS (" +
+            "  SELECT * FROM nearest " +
+            "  UNION ALL " +
+            "  SELECT d.id, COALESCE(d.chunk, n.chunk), d.file_name, d.created_at, d.nct_id, n.distance " +
+            "  FROM nearest n JOIN document_embeddings d ON d.duplicate_of = n.id" +
+            "), grouped AS (" +
+            "  SELECT c.*, COALESCE(c.nct_id, c.file_name) AS trial_key, " +
+            "         row_number() OVER (PARTITION BY COALESCE(c.nct_id, c.file_name) ORDER BY c.distance, c.id) AS chunk_rank, " +
+            "         min(c.distance) OVER (PARTITION BY COALESCE(c.nct_id, c.file_name)) AS best_distance " +
+            "  FROM candidates c%s" +
+            "), ranked AS (" +
+            "  SELECT g.*, dense_rank() OVER (ORDER BY g.best_distance, g.trial_key) AS trial_rank " +
+            "  FROM grouped g WHERE g.chunk_rank <= :chunksPerTrial" +
+            ") " +
+            "SELECT trial_rank, trial_key, id, chunk, file_name, created_at, nct_id, distance " +
+            "FROM ranked WHERE trial_rank <= :k " +
+            "ORDER BY trial_rank, chunk_rank";
+
+    // Trial tier through the trial_vectors HNSW index (its expression casts to vector(N)); the chunk tier is
+    // materialized so the planner scans just those trials' chunks instead of walking the chunk index.
+    // Duplicate chunks rank by their canonical row's embedding, as they count in the trial vectors, and
+    // return their own text (the canonical text for exact duplicates, which store none)
+    private static final String HIERARCHICAL_NEAREST_SQL =
+            "WITH trials AS MATERIALIZED (" +
+            "  SELECT nct_id FROM trial_vectors " +
+            "  ORDER BY CAST(embedding AS vector(%1$d)) <=> CAST(:queryEmbedding AS vector(%1$d)) " +
+            "  LIMIT :trials" +
+            "), candidates AS MATERIALIZED (" +
+            "  SELECT d.id, COALESCE(d.chunk, c.chunk) AS chunk, d.file_name, d.created_at, d.nct_id, " +
+            "         COALESCE(d.embedding, c.embedding) <=> CAST(:queryEmbedding AS vector) AS distance " +
+            "  FROM document_embeddings d JOIN trials t ON t.nct_id = d.nct_id " +
+            "  LEFT JOIN document_embeddings c ON c.id = d.duplicate_of " +
+            "  WHERE COALESCE(d.embedding, c.embedding) IS NOT NULL" +
+            ") " +
+            "SELECT * FROM candidates%2$s ORDER BY distance, id LIMIT :k";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    private final EmbeddingMigrationRepository columns;
+
+    // The bit(N) and vector(N) casts must match the index expressions, so N is spliced into the SQL. It is
+    // the live column's, read on first use; a re-embed cutover elsewhere needs a restart here anyway
+    private volatile Integer dimensions;
+
+    public DocumentEmbeddingOpenAIRepositoryCustomImpl(JdbcTemplate jdbcTemplate, EmbeddingMigrationRepository columns) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.columns = columns;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<DocumentEmbeddingOpenAI> findNearestNeighborsQuantized(float[] queryEmbedding, int k, int candidates,
+                                                                       double threshold) {
+        setEfSearch(efSearchFor(candidates));
+
+        Query query = entityManager.createNativeQuery(quantizedNearestSql(threshold), DocumentEmbeddingOpenAI.class)
+                .setParameter("queryEmbedding", queryEmbedding)
+                .setParameter("candidates", candidates)
+                .setParameter("k", k);
+        if (threshold > 0) {
+            query.setParameter("threshold", threshold);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<DocumentEmbeddingOpenAI> results = query.getResultList();
+        return results;
+    }
+
+    @Override
+    public List<List<DocumentEmbeddingOpenAI>> findNearestNeighborsBatch(List<float[]> queryEmbeddings, int[] ks,
+                                                                         double[] thresholds) {
+        List<List<DocumentEmbeddingOpenAI>> results = new ArrayList<>(queryEmbeddings.size());
+        for (int i = 0; i < queryEmbeddings.size(); i++) {
+            results.add(new ArrayList<>(ks[i]));
+        }
+        if (queryEmbeddings.isEmpty()) {
+            return results;
+        }
+
+        RowCallbackHandler collect = rs -> results.get(rs.getInt("ord") - 1).add(chunkRow(rs));
+        namedJdbcTemplate.query(BATCH_NEAREST_SQL, batchNearestParams(queryEmbeddings, ks, thresholds), collect);
+        return results;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<TrialNeighbor> findNearestTrials(float[] queryEmbedding, int k, int chunksPerTrial, int candidates,
+                                                 double threshold) {
+        setEfSearch(efSearchFor(candidates));
+
+        return namedJdbcTemplate.query(groupedNearestSql(threshold),
+                groupedNearestParams(queryEmbedding, k, chunksPerTrial, candidates, threshold),
+                (rs, rowNum) -> new TrialNeighbor(rs.getInt("trial_rank"), rs.getString("trial_key"),
+                        rs.getDouble("distance"), chunkRow(rs)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<DocumentEmbeddingOpenAI> findNearestNeighborsHierarchical(float[] queryEmbedding, int k, int trials,
+                                                                          double threshold) {
+        setEfSearch(efSearchFor(trials));
+
+        return namedJdbcTemplate.query(hierarchicalNearestSql(threshold),
+                hierarchicalNearestParams(queryEmbedding, k, trials, threshold), (rs, rowNum) -> chunkRow(rs));
+    }
+
+    @Override
+    public void createBinaryQuantizedIndex() {
+        jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + BINARY_INDEX +
+                " ON document_embeddings USING hnsw ((CAST(binary_quantize(embedding) AS bit(" + columns.liveDimensions() + "))) bit_hamming_ops)");
+    }
+
+    // Runs as a Hibernate native query, which takes "::" for a parameter prefix, so casts are spelled CAST(... AS ...)
+    @Override
+    public String quantizedNearestSql(double threshold) {
+        return "SELECT c.* FROM (" +
+                "  SELECT * FROM document_embeddings WHERE embedding IS NOT NULL " +
+                "  ORDER BY CAST(binary_quantize(embedding) AS bit(" + dimensions() + ")) <~> " +
+                "           binary_quantize(CAST(:queryEmbedding AS vector)) " +
+                "  LIMIT :candidates) c " +
+                (threshold > 0 ? "WHERE (1 - (c.embedding <=> CAST(:queryEmbedding AS vector))) >= :threshold " : "") +
+                "ORDER BY c.embedding <=> CAST(:queryEmbedding AS vector) " +
+                "LIMIT :k";
+    }
+
+    // An HNSW scan returns at most ef_search rows, so it has to cover the whole candidate set
+    @Override
+    public int efSearchFor(int candidates) {
+        return Math.min(Math.max(candidates, MIN_EF_SEARCH), MAX_EF_SEARCH);
+    }
+
+    @Override
+    public String hierarchicalNearestSql(double threshold) {
+        return String.format(HIERARCHICAL_NEAREST_SQL, dimensions(),
+                threshold > 0 ? " WHERE (1 - distance) >= :threshold" : "");
+    }
+
+    @Override
+    public Map<String, Object> hierarchicalNearestParams(float[] queryEmbedding, int k, int trials, double threshold) {
+        return threshold > 0
+                ? Map.of("queryEmbedding", queryEmbedding, "k", k, "trials", trials, "threshold", threshold)
+                : Map.of("queryEmbedding", queryEmbedding, "k", k, "trials", trials);
+    }
+
+    @Override
+    public String groupedNearestSql(double threshold) {
+        return String.format(GROUPED_NEAREST_SQL, threshold > 0 ? " WHERE (1 - c.distance) >= :threshold" : "");
+    }
+
+    @Override
+    public Map<String, Object> groupedNearestParams(float[] queryEmbedding, int k, int chunksPerTrial, int candidates,
+                                                    double threshold) {
+        return threshold > 0
+                ? Map.of("queryEmbedding", queryEmbedding, "k", k, "chunksPerTrial", chunksPerTrial,
+                        "candidates", candidates, "threshold", threshold)
+                : Map.of("queryEmbedding", queryEmbedding, "k", k, "chunksPerTrial", chunksPerTrial,
+                        "candidates", candidates);
+    }
+
+    @Override
+    public String batchNearestSql() {
+        return BATCH_NEAREST_SQL;
+    }
+
+    // Arrays bind as text[], int[] and float8[]; vectors travel as text since the driver has no vector[] type
+    @Override
+    public Map<String, Object> batchNearestParams(List<float[]> queryEmbeddings, int[] ks, double[] thresholds) {
+        return Map.of(
+                "vectors", queryEmbeddings.stream().map(e -> new PGvector(e).toString()).toArray(String[]::new),
+                "ks", Arrays.stream(ks).boxed().toArray(Integer[]::new),
+                "thresholds", Arrays.stream(thresholds).boxed().toArray(Double[]::new));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> explainAnalyze(String sql, Map<String, Object> params, int efSearch) {
+        if (efSearch > 0) {
+            setEfSearch(efSearch);
+        }
+        return namedJdbcTemplate.queryForList("EXPLAIN (ANALYZE, BUFFERS) " + sql, params, String.class);
+    }
+
+    // Chunk columns of a search row, without the embedding
+    private static DocumentEmbeddingOpenAI chunkRow(ResultSet rs) throws SQLException {
+        DocumentEmbeddingOpenAI de = new DocumentEmbeddingOpenAI();
+        de.setId(rs.getLong("id"));
+        de.setChunk(rs.getString("chunk"));
+        de.setFileName(rs.getString("file_name"));
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        de.setCreatedAt(createdAt != null ? createdAt.toLocalDateTime() : null);
+        de.setNctId(rs.getString("nct_id"));
+        return de;
+    }
+
+    private int dimensions() {
+        Integer live = dimensions;
+        if (live == null) {
+            live = columns.liveDimensions();
+            dimensions = live;
+        }
+        return live;
+    }
+
+    private void setEfSearch(int efSearch) {
+        entityManager.createNativeQuery("SELECT set_config('hnsw.ef_search', :efSearch, true)")
+                .setParameter("efSearch", Integer.toString(efSearch))
+                .getSingleResult();
+    }
+}
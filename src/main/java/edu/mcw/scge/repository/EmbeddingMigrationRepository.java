@@ -0,0 +1,143 @@
+package edu.mcw.scge.repository;
+
+import com.pgvector.PGvector;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schema and row operations for re-embedding the chunk table into a new vector column.
+ * <p>
+ * New vectors are written to {@code embedding_next} next to the live {@code embedding} column, so
+ * searches keep working on the old vectors throughout. {@link #swapColumns()} then replaces the old
+ * column (and its index) with the new one; it must run inside the transaction that holds
+ * {@link #lockTable()}.
+ */
+@Repository
+public class EmbeddingMigrationRepository {
+
+    public static final String LIVE_COLUMN = "embedding";
+    public static final String NEXT_COLUMN = "embedding_next";
+
+    private static final String LIVE_INDEX = "document_embeddings_embedding_hnsw_idx";
+    private static final String NEXT_INDEX = "document_embeddings_embedding_next_hnsw_idx";
+    private static final String LIVE_BINARY_INDEX = DocumentEmbeddingOpenAIRepositoryCustomImpl.BINARY_INDEX;
+    private static final String NEXT_BINARY_INDEX = "document_embeddings_embedding_next_bq_idx";
+
+    // For vector columns atttypmod is the declared dimension count (-1 when undeclared)
+    private static final String COLUMN_DIMENSIONS_SQL =
+            "SELECT atttypmod FROM pg_attribute " +
+            "WHERE attrelid = 'document_embeddings'::regclass AND attname = ? AND NOT attisdropped";
+
+    // Every row with a live embedding needs a new one; duplicate rows have neither
+    private static final String PENDING_WHERE =
+            "WHERE embedding IS NOT NULL AND embedding_next IS NULL AND chunk IS NOT NULL ";
+
+    private static final String PENDING_PAGE_SQL =
+            "SELECT id, chunk FROM document_embeddings " + PENDING_WHERE + "AND id > ? ORDER BY id LIMIT ?";
+
+    private static final String PENDING_COUNT_SQL =
+            "SELECT COUNT(*) FROM document_embeddings " + PENDING_WHERE;
+
+    private static final String STORE_NEXT_SQL =
+            "UPDATE document_embeddings SET embedding_next = CAST(? AS vector) WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EmbeddingMigrationRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Declared dimensions of a vector column, or null if the column does not exist
+     */
+    public Integer columnDimensions(String column) {
+        List<Integer> typmods = jdbcTemplate.queryForList(COLUMN_DIMENSIONS_SQL, Integer.class, column);
+        return typmods.isEmpty() ? null : typmods.get(0);
+    }
+
+    /**
+     * Declared dimensions of the live embedding column, which every vector(N) and bit(N) cast has to match
+     */
+    public int liveDimensions() {
+        Integer dimensions = columnDimensions(LIVE_COLUMN);
+        if (dimensions == null || dimensions <= 0) {
+            throw new IllegalStateException("document_embeddings." + LIVE_COLUMN + " has no declared dimensions");
+        }
+        return dimensions;
+    }
+
+    public void addNextColumn(int dimensions) {
+        jdbcTemplate.execute("ALTER TABLE document_embeddings ADD COLUMN IF NOT EXISTS " + NEXT_COLUMN +
+                " vector(" + dimensions + ")");
+    }
+
+    /**
+     * Keyset page of chunks still missing a new embedding (start with afterId = 0)
+     */
+    public List<PendingChunk> findPendingAfterId(long afterId, int limit) {
+        return jdbcTemplate.query(PENDING_PAGE_SQL,
+                (rs, rowNum) -> new PendingChunk(rs.getLong("id"), rs.getString("chunk")), afterId, limit);
+    }
+
+    public long countPending() {
+        Long count = jdbcTemplate.queryForObject(PENDING_COUNT_SQL, Long.class);
+        return count != null ? count : 0;
+    }
+
+    public void storeNext(List<PendingChunk> chunks, List<float[]> embeddings) {
+        List<Object[]> args = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            args.add(new Object[]{new PGvector(embeddings.get(i)).toString(), chunks.get(i).id()});
+        }
+        jdbcTemplate.batchUpdate(STORE_NEXT_SQL, args);
+    }
+
+    /**
+     * HNSW cosine index on the new column, built without blocking writers (must run outside a transaction)
+     */
+    public void createNextIndex() {
+        jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + NEXT_INDEX +
+                " ON document_embeddings USING hnsw (" + NEXT_COLUMN + " vector_cosine_ops)");
+    }
+
+    public boolean hasLiveBinaryIndex() {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_indexes WHERE tablename = 'document_embeddings' AND indexname = ?",
+                Long.class, LIVE_BINARY_INDEX);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Binary-quantized Hamming index on the new column, for quantized search after the cutover
+     */
+    public void createNextBinaryIndex(int dimensions) {
+        jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + NEXT_BINARY_INDEX +
+                " ON document_embeddings USING hnsw ((CAST(binary_quantize(" + NEXT_COLUMN + ") AS bit(" + dimensions +
+                "))) bit_hamming_ops)");
+    }
+
+    /**
+     * Block reads and writes on the chunk table until the surrounding transaction ends
+     */
+    public void lockTable() {
+        jdbcTemplate.execute("LOCK TABLE document_embeddings IN ACCESS EXCLUSIVE MODE");
+    }
+
+    /**
+     * Replace the live embedding column and its index with the new ones
+     */
+    public void swapColumns() {
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + LIVE_INDEX);
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + LIVE_BINARY_INDEX);
+        jdbcTemplate.execute("ALTER TABLE document_embeddings DROP COLUMN " + LIVE_COLUMN);
+        jdbcTemplate.execute("ALTER TABLE document_embeddings RENAME COLUMN " + NEXT_COLUMN + " TO " + LIVE_COLUMN);
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS " + NEXT_INDEX + " RENAME TO " + LIVE_INDEX);
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS " + NEXT_BINARY_INDEX + " RENAME TO " + LIVE_BINARY_INDEX);
+    }
+
+    public record PendingChunk(long id, String chunk) {
+    }
+}
@@ -0,0 +1,67 @@
+package edu.mcw.scge.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Trial-level vectors in trial_vectors, each the mean of the trial's chunk embeddings.
+ * <p>
+ * The mean is computed in the database (pgvector's avg aggregate). Chunks stored as duplicates of
+ * another chunk count with their canonical chunk's embedding, so a trial is not summarized by only
+ * the text it does not share. Cosine distance ignores vector length, so the mean needs no
+ * normalization.
+ */
+@Repository
+public class TrialVectorRepository {
+
+    public static final String INDEX = "trial_vectors_embedding_hnsw_idx";
+
+    private static final String MEAN_SELECT =
+            "SELECT d.nct_id, avg(COALESCE(d.embedding, c.embedding)), count(COALESCE(d.embedding, c.embedding)), now() " +
+            "FROM document_embeddings d LEFT JOIN document_embeddings c ON c.id = d.duplicate_of " +
+            "WHERE d.nct_id %s " +
+            "GROUP BY d.nct_id HAVING count(COALESCE(d.embedding, c.embedding)) > 0";
+
+    private static final String INSERT = "INSERT INTO trial_vectors (nct_id, embedding, chunk_count, updated_at) ";
+
+    private final JdbcTemplate jdbcTemplate;
+    // The index expression casts to the live column's vector(N), which hierarchical search has to match
+    private final EmbeddingMigrationRepository columns;
+
+    public TrialVectorRepository(JdbcTemplate jdbcTemplate, EmbeddingMigrationRepository columns) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.columns = columns;
+    }
+
+    /**
+     * Recompute one trial's vector from its current chunks (removed if it has no embedded chunk)
+     */
+    @Transactional
+    public void refresh(String nctId) {
+        jdbcTemplate.update("DELETE FROM trial_vectors WHERE nct_id = ?", nctId);
+        jdbcTemplate.update(INSERT + String.format(MEAN_SELECT, "= ?"), nctId);
+    }
+
+    /**
+     * Recompute every trial's vector and rebuild the HNSW index at the live column's dimensions
+     *
+     * @return number of trial vectors
+     */
+    @Transactional
+    public int rebuildAll() {
+        jdbcTemplate.execute("TRUNCATE trial_vectors");
+        int trials = jdbcTemplate.update(INSERT + String.format(MEAN_SELECT, "IS NOT NULL"));
+
+        int dimensions = columns.liveDimensions();
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + INDEX);
+        jdbcTemplate.execute("CREATE INDEX " + INDEX + " ON trial_vectors " +
+                "USING hnsw ((CAST(embedding AS vector(" + dimensions + "))) vector_cosine_ops)");
+        return trials;
+    }
+
+    public long count() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM trial_vectors", Long.class);
+        return count != null ? count : 0;
+    }
+}
@@ -0,0 +1,115 @@
+package edu.mcw.scge.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Postgres-backed work queue of NCT IDs shared by any number of pipeline workers.
+ * <p>
+ * Workers claim batches with {@code FOR UPDATE SKIP LOCKED}, so concurrent claims never block on
+ * or double-claim the same rows. A claim is a time-limited lease: the owner renews it while it
+ * works on the trial, and once it expires (the worker crashed or hung) the trial becomes claimable
+ * again, until it has used up its attempts.
+ */
+@Repository
+public class TrialWorkQueueRepository {
+
+    public static final String PENDING = "PENDING";
+    public static final String CLAIMED = "CLAIMED";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    private static final String ENQUEUE_SQL =
+            "INSERT INTO trial_work_queue (nct_id) VALUES (?) " +
+            "ON CONFLICT (nct_id) DO UPDATE SET status = 'PENDING', lease_owner = NULL, lease_expires_at = NULL, " +
+            "attempts = 0, last_error = NULL, enqueued_at = now(), updated_at = now() " +
+            "WHERE trial_work_queue.status <> 'CLAIMED'";
+
+    private static final String CLAIM_SQL =
+            "UPDATE trial_work_queue q SET status = 'CLAIMED', lease_owner = ?, " +
+            "lease_expires_at = now() + ? * INTERVAL '1 second', attempts = q.attempts + 1, updated_at = now() " +
+            "WHERE q.nct_id IN (" +
+            "  SELECT nct_id FROM trial_work_queue " +
+            "  WHERE status = 'PENDING' OR (status = 'CLAIMED' AND lease_expires_at < now() AND attempts < ?) " +
+            "  ORDER BY enqueued_at, nct_id " +
+            "  LIMIT ? " +
+            "  FOR UPDATE SKIP LOCKED) " +
+            "RETURNING q.nct_id";
+
+    private static final String FAIL_EXHAUSTED_SQL =
+            "UPDATE trial_work_queue SET status = 'FAILED', lease_owner = NULL, lease_expires_at = NULL, " +
+            "last_error = 'Lease expired after ' || attempts || ' attempts', updated_at = now() " +
+            "WHERE status = 'CLAIMED' AND lease_expires_at < now() AND attempts >= ?";
+
+    private static final String RENEW_SQL =
+            "UPDATE trial_work_queue SET lease_expires_at = now() + ? * INTERVAL '1 second', updated_at = now() " +
+            "WHERE nct_id = ? AND status = 'CLAIMED' AND lease_owner = ?";
+
+    private static final String COMPLETE_SQL =
+            "UPDATE trial_work_queue SET status = ?, lease_owner = NULL, lease_expires_at = NULL, " +
+            "last_error = ?, updated_at = now() " +
+            "WHERE nct_id = ? AND status = 'CLAIMED' AND lease_owner = ?";
+
+    private static final String OUTSTANDING_SQL =
+            "SELECT COUNT(*) FROM trial_work_queue WHERE status IN ('PENDING', 'CLAIMED')";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TrialWorkQueueRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Add NCT IDs as pending work; finished or failed entries are reset, in-flight ones are left alone
+     */
+    public void enqueue(List<String> nctIds) {
+        jdbcTemplate.batchUpdate(ENQUEUE_SQL, nctIds, 500, (ps, nctId) -> ps.setString(1, nctId));
+    }
+
+    /**
+     * Lease up to batchSize pending trials, or abandoned ones with attempts left, to the given worker
+     */
+    public List<String> claim(String workerId, int batchSize, int leaseSeconds, int maxAttempts) {
+        return jdbcTemplate.queryForList(CLAIM_SQL, String.class, workerId, leaseSeconds, maxAttempts, batchSize);
+    }
+
+    /**
+     * Give up on trials whose lease expired maxAttempts times - they keep killing their worker
+     */
+    public int failExhausted(int maxAttempts) {
+        return jdbcTemplate.update(FAIL_EXHAUSTED_SQL, maxAttempts);
+    }
+
+    /**
+     * Extend the worker's lease on one trial
+     *
+     * @return false if the worker no longer held the lease (it expired and was taken over)
+     */
+    public boolean renewLease(String nctId, String workerId, int leaseSeconds) {
+        return jdbcTemplate.update(RENEW_SQL, leaseSeconds, nctId, workerId) > 0;
+    }
+
+    /**
+     * @return false if the worker no longer held the lease (it expired and was taken over)
+     */
+    public boolean markDone(String nctId, String workerId) {
+        return jdbcTemplate.update(COMPLETE_SQL, DONE, null, nctId, workerId) > 0;
+    }
+
+    /**
+     * @return false if the worker no longer held the lease (it expired and was taken over)
+     */
+    public boolean markFailed(String nctId, String workerId, String error) {
+        return jdbcTemplate.update(COMPLETE_SQL, FAILED, error, nctId, workerId) > 0;
+    }
+
+    /**
+     * Trials still pending or leased by some worker
+     */
+    public long countOutstanding() {
+        Long count = jdbcTemplate.queryForObject(OUTSTANDING_SQL, Long.class);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,309 @@
+package edu.mcw.scge.service;
+
+import edu.mcw.scge.repository.ChunkFingerprintRepository;
+import edu.mcw.scge.repository.ChunkFingerprintRepository.Fingerprint;
+import edu.mcw.scge.repository.ChunkFingerprintRepository.Handover;
+import edu.mcw.scge.repository.ChunkFingerprintRepository.Heir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Exact and near-duplicate detection for chunks about to be embedded.
+ * <p>
+ * Trial reports repeat a lot of boilerplate (eligibility wording, sponsor blurbs, link lists), so
+ * many chunks are identical or nearly identical across trials. Each chunk gets a SHA-256 of its
+ * normalized text and a 64-bit SimHash over word shingles. A chunk whose hash is already stored, or
+ * whose SimHash is within {@code pipeline.dedup.near-distance} bits of a stored one, is kept as a
+ * reference to that canonical row instead of being embedded again.
+ * <p>
+ * Near matches are found through 4 bands of 16 bits: two SimHashes within 3 bits of each other
+ * agree exactly on at least one band, so only the entries sharing a band are compared. The index
+ * covers canonical rows only and is loaded lazily from the database on first use.
+ * <p>
+ * Other processes delete canonical rows without updating this index, so every match is confirmed
+ * against the database before it is used, and entries found stale are dropped.
+ */
+@Service
+public class ChunkDeduplicator {
+    private static final Logger LOG = LoggerFactory.getLogger(ChunkDeduplicator.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final int SHINGLE_SIZE = 3;
+    private static final int BANDS = 4;
+    private static final int BAND_BITS = 64 / BANDS;
+    private static final int LOAD_PAGE_SIZE = 10000;
+
+    private final ChunkFingerprintRepository repository;
+
+    // Dedup on/off; when off every chunk is embedded and stored on its own
+    @Value("${pipeline.dedup.enabled:true}")
+    private boolean enabled;
+
+    // Max SimHash Hamming distance for a near duplicate (0 = exact matches only, at most 3)
+    @Value("${pipeline.dedup.near-distance:3}")
+    private int nearDistance;
+
+    // Shorter chunks only dedup on exact matches; a few changed words move their SimHash too little
+    @Value("${pipeline.dedup.min-near-chars:200}")
+    private int minNearChars;
+
+    // Canonical rows: exact hash -> id, id -> fingerprint, band key -> ids sharing that band
+    private final Map<String, Long> byHash = new HashMap<>();
+    private final Map<Long, Fingerprint> byId = new HashMap<>();
+    private final Map<Long, List<Long>> bands = new HashMap<>();
+    private boolean loaded;
+
+    public ChunkDeduplicator(ChunkFingerprintRepository repository) {
+        this.repository = repository;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Fingerprint a chunk's text; simhash is null for chunks too short for near matching
+     */
+    public ChunkFingerprint fingerprint(String text) {
+        String normalized = normalize(text);
+        String contentHash = TrialRegistry.contentHash(normalized);
+        Long simhash = normalized.length() >= minNearChars ? simhash(normalized) : null;
+        return new ChunkFingerprint(contentHash, simhash);
+    }
+
+    /**
+     * Canonical row this chunk duplicates, or null if it has to be embedded.
+     * <p>
+     * The returned row is locked against deletes until the current transaction ends, so call this
+     * in the transaction that stores the duplicate.
+     */
+    public Match findCanonical(ChunkFingerprint fingerprint) {
+        Long indexed = exactCandidate(fingerprint.contentHash());
+        if (indexed != null) {
+            if (repository.lockCanonical(indexed)) {
+                return new Match(indexed, true);
+            }
+            evict(indexed);
+        }
+
+        // Another worker may have stored it since the index was loaded, or the indexed row was deleted
+        Long exact = repository.findCanonicalByHash(fingerprint.contentHash());
+        if (exact != null) {
+            synchronized (this) {
+                index(new Fingerprint(exact, fingerprint.contentHash(), null));
+            }
+            return new Match(exact, true);
+        }
+
+        if (nearDistance <= 0 || fingerprint.simhash() == null) {
+            return null;
+        }
+        for (Long id : nearCandidates(fingerprint.simhash())) {
+            if (repository.lockCanonical(id)) {
+                return new Match(id, false);
+            }
+            evict(id);
+        }
+        return null;
+    }
+
+    private synchronized Long exactCandidate(String contentHash) {
+        ensureLoaded();
+        return byHash.get(contentHash);
+    }
+
+    // Indexed rows within the near distance, in band order
+    private synchronized Collection<Long> nearCandidates(long simhash) {
+        Set<Long> near = new LinkedHashSet<>();
+        for (int band = 0; band < BANDS; band++) {
+            List<Long> candidates = bands.get(bandKey(band, simhash));
+            if (candidates == null) {
+                continue;
+            }
+            for (Long id : candidates) {
+                Long other = byId.get(id).simhash();
+                if (other != null && Long.bitCount(other ^ simhash) <= Math.min(nearDistance, BANDS - 1)) {
+                    near.add(id);
+                }
+            }
+        }
+        return near;
+    }
+
+    private synchronized void evict(Long id) {
+        LOG.debug("Canonical chunk {} no longer exists, dropping it from the dedup index", id);
+        unindex(id);
+    }
+
+    /**
+     * Record a newly stored canonical row
+     */
+    public synchronized void register(long id, ChunkFingerprint fingerprint) {
+        if (loaded) {
+            index(new Fingerprint(id, fingerprint.contentHash(), fingerprint.simhash()));
+        }
+    }
+
+    /**
+     * Hand a trial's shared chunks over to the rows referencing them; call before deleting the trial
+     */
+    public void beforeTrialDelete(String nctId) {
+        Handover handover = repository.promoteHeirs(nctId);
+        if (!handover.heirs().isEmpty()) {
+            LOG.info("Trial {}: {} shared chunks handed over to referencing rows", nctId, handover.heirs().size());
+        }
+        reindex(handover);
+    }
+
+    /**
+     * Hand shared chunks among these over to the rows referencing them; call before deleting the chunks
+     */
+    public void beforeChunkDelete(Collection<Long> chunkIds) {
+        Handover handover = repository.promoteHeirs(chunkIds);
+        if (!handover.heirs().isEmpty()) {
+            LOG.info("{} shared chunks handed over to referencing rows", handover.heirs().size());
+        }
+        reindex(handover);
+    }
+
+    // Handovers wait on row locks of other transactions, so only the index update holds this object's lock
+    private synchronized void reindex(Handover handover) {
+        if (!loaded) {
+            return;
+        }
+        for (Long id : handover.canonicalIds()) {
+            unindex(id);
+        }
+        for (Heir heir : handover.heirs()) {
+            index(heir.fingerprint());
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        long afterId = 0;
+        List<Fingerprint> page;
+        do {
+            page = repository.findCanonicalAfterId(afterId, LOAD_PAGE_SIZE);
+            for (Fingerprint fingerprint : page) {
+                index(fingerprint);
+                afterId = fingerprint.id();
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+        loaded = true;
+        LOG.info("Loaded {} chunk fingerprints for deduplication", byId.size());
+    }
+
+    private void index(Fingerprint fingerprint) {
+        byHash.putIfAbsent(fingerprint.contentHash(), fingerprint.id());
+        if (byId.put(fingerprint.id(), fingerprint) != null || fingerprint.simhash() == null) {
+            return;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            bands.computeIfAbsent(bandKey(band, fingerprint.simhash()), k -> new ArrayList<>(1)).add(fingerprint.id());
+        }
+    }
+
+    private void unindex(Long id) {
+        Fingerprint fingerprint = byId.remove(id);
+        if (fingerprint == null) {
+            return;
+        }
+        byHash.remove(fingerprint.contentHash(), id);
+        if (fingerprint.simhash() == null) {
+            return;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(band, fingerprint.simhash());
+            List<Long> ids = bands.get(key);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    bands.remove(key);
+                }
+            }
+        }
+    }
+
+    private static long bandKey(int band, long simhash) {
+        return ((long) band << BAND_BITS) | ((simhash >>> (band * BAND_BITS)) & 0xFFFFL);
+    }
+
+    /**
+     * Lower case with whitespace collapsed; must match the backfill in schema/004_chunk_dedup.sql
+     */
+    static String normalize(String text) {
+        return WHITESPACE.matcher(text.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 64-bit SimHash over word shingles of normalized text
+     */
+    static long simhash(String normalized) {
+        String[] words = NON_WORD.split(normalized);
+        int start = words.length > 0 && words[0].isEmpty() ? 1 : 0;
+        int count = words.length - start;
+
+        int[] weights = new int[64];
+        int shingles = Math.max(1, count - SHINGLE_SIZE + 1);
+        for (int i = 0; i < shingles; i++) {
+            StringBuilder shingle = new StringBuilder();
+            for (int j = start + i; j < Math.min(start + i + SHINGLE_SIZE, words.length); j++) {
+                shingle.append(words[j]).append(' ');
+            }
+            long hash = hash64(shingle.toString());
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1L) != 0 ? 1 : -1;
+            }
+        }
+
+        long simhash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                simhash |= 1L << bit;
+            }
+        }
+        return simhash;
+    }
+
+    // FNV-1a followed by the MurmurHash3 finalizer, so similar shingles get unrelated bits
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public record ChunkFingerprint(String contentHash, Long simhash) {
+    }
+
+    /**
+     * A stored canonical row; exact when the normalized text is identical
+     */
+    public record Match(long canonicalId, boolean exact) {
+    }
+}
@@ -1,5 +1,7 @@
 package edu.mcw.scge.service;
 
+import edu.mcw.scge.profiling.IngestEvents;
+import edu.mcw.scge.profiling.IngestStageEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
@@ -30,7 +32,9 @@ public class DocumentPreprocessor {
             String filename = doc.getMetadata().getOrDefault("filename", "unknown").toString();
             LOG.info("Preprocessing document: {}", filename);
 
+            IngestStageEvent clean = IngestEvents.stage(IngestEvents.CLEAN);
             String cleanedContent = cleanContent(doc.getContent());
+            clean.end(-1, cleanedContent.length(), -1);
 
             // Skip if content is too short after cleaning
             if (cleanedContent.length() < 50) {
@@ -0,0 +1,169 @@
+package edu.mcw.scge.service;
+
+import edu.mcw.scge.model.ClinicalTrial;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Orders trial refreshes by priority and bounds a run by wall-clock time and embedding tokens.
+ * <p>
+ * Trials are refreshed in this order:
+ * <ol>
+ *   <li>new trials that were never ingested, in curation order</li>
+ *   <li>trials whose content changed within {@code pipeline.schedule.recent-change-days} and that were not
+ *   checked since, most recent first</li>
+ *   <li>all other trials, longest since their last successful refresh first</li>
+ *   <li>trials whose last attempts failed, fewest failures first</li>
+ * </ol>
+ * A run that runs out of budget, or is asked to stop, stops between trials. Whatever it did not
+ * reach is still the stalest work, so the next run starts there.
+ */
+@Service
+public class RefreshScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshScheduler.class);
+
+    private static final int NEW = 0;
+    private static final int RECENTLY_CHANGED = 1;
+    private static final int STALE = 2;
+    private static final int FAILING = 3;
+
+    private final TrialRegistry trialRegistry;
+
+    private volatile boolean stopRequested;
+
+    @Value("${pipeline.schedule.recent-change-days:7}")
+    private int recentChangeDays;
+
+    // Wall-clock budget per run (0 = unlimited)
+    @Value("${pipeline.budget.max-minutes:0}")
+    private long maxMinutes;
+
+    // Embedding token budget per run (0 = unlimited)
+    @Value("${pipeline.budget.max-embedding-tokens:0}")
+    private long maxEmbeddingTokens;
+
+    public RefreshScheduler(TrialRegistry trialRegistry) {
+        this.trialRegistry = trialRegistry;
+    }
+
+    /**
+     * Order NCT IDs for refreshing, highest priority first
+     */
+    public List<String> prioritize(List<String> nctIds) {
+        Map<String, ClinicalTrial> registered = new HashMap<>();
+        for (ClinicalTrial trial : trialRegistry.getAll()) {
+            registered.put(trial.getNctId(), trial);
+        }
+        LocalDateTime recentSince = LocalDateTime.now().minusDays(recentChangeDays);
+
+        Comparator<String> byPriority = Comparator.comparingInt(nctId -> tier(registered.get(nctId), recentSince));
+        byPriority = byPriority.thenComparing((a, b) -> compareWithinTier(registered.get(a), registered.get(b), recentSince));
+        List<String> ordered = nctIds.stream().sorted(byPriority).toList();
+
+        int[] counts = new int[4];
+        ordered.forEach(nctId -> counts[tier(registered.get(nctId), recentSince)]++);
+        LOG.info("Refresh order: {} new, {} recently changed, {} by staleness, {} previously failed",
+                counts[NEW], counts[RECENTLY_CHANGED], counts[STALE], counts[FAILING]);
+        return ordered;
+    }
+
+    /**
+     * Start the budget for one run
+     *
+     * @param embeddingTokens running total of embedding tokens spent by this process
+     */
+    public Budget startBudget(LongSupplier embeddingTokens) {
+        return new Budget(System.nanoTime(), embeddingTokens, embeddingTokens.getAsLong());
+    }
+
+    /**
+     * Make every running and future run stop before its next trial (on shutdown)
+     */
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    private static int tier(ClinicalTrial trial, LocalDateTime recentSince) {
+        if (trial != null && trial.getFailureCount() > 0) {
+            return FAILING;
+        }
+        if (trial == null || trial.getLastIngestedAt() == null) {
+            return NEW;
+        }
+        // A check after the change already picked it up, so only staleness ranks the trial now
+        if (trial.getLastChangedAt() != null && trial.getLastChangedAt().isAfter(recentSince) &&
+                (trial.getLastCheckedAt() == null || trial.getLastCheckedAt().isBefore(trial.getLastChangedAt()))) {
+            return RECENTLY_CHANGED;
+        }
+        return STALE;
+    }
+
+    private static int compareWithinTier(ClinicalTrial a, ClinicalTrial b, LocalDateTime recentSince) {
+        switch (tier(a, recentSince)) {
+            case RECENTLY_CHANGED:
+                return b.getLastChangedAt().compareTo(a.getLastChangedAt());
+            case STALE:
+                return Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder())
+                        .compare(lastRefreshed(a), lastRefreshed(b));
+            case FAILING:
+                return Comparator.comparingInt(ClinicalTrial::getFailureCount)
+                        .thenComparing(ClinicalTrial::getLastFailedAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+                        .compare(a, b);
+            default:
+                return 0;
+        }
+    }
+
+    private static LocalDateTime lastRefreshed(ClinicalTrial trial) {
+        return trial.getLastCheckedAt() != null ? trial.getLastCheckedAt() : trial.getLastIngestedAt();
+    }
+
+    /**
+     * Remaining time and embedding tokens of one run
+     */
+    public class Budget {
+        private final long startNanos;
+        private final LongSupplier embeddingTokens;
+        private final long startTokens;
+
+        private Budget(long startNanos, LongSupplier embeddingTokens, long startTokens) {
+            this.startNanos = startNanos;
+            this.embeddingTokens = embeddingTokens;
+            this.startTokens = startTokens;
+        }
+
+        public Duration elapsed() {
+            return Duration.ofNanos(System.nanoTime() - startNanos);
+        }
+
+        public long tokensUsed() {
+            return embeddingTokens.getAsLong() - startTokens;
+        }
+
+        /**
+         * Why the run has to stop, or null while there is budget left
+         */
+        public String exhausted() {
+            if (stopRequested) {
+                return "stop requested";
+            }
+            if (maxMinutes > 0 && elapsed().toMinutes() >= maxMinutes) {
+                return "wall-clock budget of " + maxMinutes + " minutes used up";
+            }
+            if (maxEmbeddingTokens > 0 && tokensUsed() >= maxEmbeddingTokens) {
+                return "embedding budget of " + maxEmbeddingTokens + " tokens used up";
+            }
+            return null;
+        }
+    }
+}
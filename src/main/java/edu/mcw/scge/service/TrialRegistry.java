@@ -0,0 +1,160 @@
+package edu.mcw.scge.service;
+
+import edu.mcw.scge.model.ClinicalTrial;
+import edu.mcw.scge.repository.ClinicalTrialRepository;
+import edu.mcw.scge.repository.CorpusVersionRepository;
+import edu.mcw.scge.repository.TrialVectorRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trial-level bookkeeping on top of the clinical_trials table.
+ * <p>
+ * Existence checks, chunk counts and deletes are single-row operations on the registry instead of
+ * scans or aggregates over the chunk table. A full run calls {@link #load()} once up front and then
+ * answers lookups from memory; without it every lookup is a primary-key read.
+ */
+@Service
+public class TrialRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(TrialRegistry.class);
+
+    private final ClinicalTrialRepository repository;
+    private final ChunkDeduplicator deduplicator;
+    private final CorpusVersionRepository corpusVersion;
+    private final TrialVectorRepository trialVectors;
+    private volatile Map<String, ClinicalTrial> trials;
+
+    public TrialRegistry(ClinicalTrialRepository repository, ChunkDeduplicator deduplicator,
+                         CorpusVersionRepository corpusVersion, TrialVectorRepository trialVectors) {
+        this.repository = repository;
+        this.deduplicator = deduplicator;
+        this.corpusVersion = corpusVersion;
+        this.trialVectors = trialVectors;
+    }
+
+    /**
+     * Load the whole registry into memory
+     */
+    public void load() {
+        Map<String, ClinicalTrial> loaded = new ConcurrentHashMap<>();
+        for (ClinicalTrial trial : repository.findAll()) {
+            loaded.put(trial.getNctId(), trial);
+        }
+        trials = loaded;
+        LOG.info("Loaded {} trials from registry", loaded.size());
+    }
+
+    public ClinicalTrial get(String nctId) {
+        Map<String, ClinicalTrial> cached = trials;
+        if (cached != null) {
+            return cached.get(nctId);
+        }
+        return repository.findById(nctId).orElse(null);
+    }
+
+    public List<ClinicalTrial> getAll() {
+        Map<String, ClinicalTrial> cached = trials;
+        return cached != null ? List.copyOf(cached.values()) : repository.findAll();
+    }
+
+    /**
+     * Delete a trial together with all of its chunks; chunks other trials duplicate are handed over first
+     */
+    @Transactional
+    public void delete(String nctId) {
+        deduplicator.beforeTrialDelete(nctId);
+        repository.deleteTrial(nctId);
+        corpusVersion.bump();
+        Map<String, ClinicalTrial> cached = trials;
+        if (cached != null) {
+            cached.remove(nctId);
+        }
+    }
+
+    /**
+     * Create the registry row a trial's chunks will reference
+     *
+     * @param lastChangedAt when the trial's content last changed (now, unless it is a forced re-ingest)
+     */
+    public ClinicalTrial register(String nctId, String fileName, String sourceUrl, String contentHash,
+                                  LocalDateTime lastChangedAt) {
+        ClinicalTrial trial = new ClinicalTrial();
+        trial.setNctId(nctId);
+        trial.setFileName(fileName);
+        trial.setSourceUrl(sourceUrl);
+        trial.setContentHash(contentHash);
+        trial.setLastChangedAt(lastChangedAt);
+        trial = repository.save(trial);
+
+        Map<String, ClinicalTrial> cached = trials;
+        if (cached != null) {
+            cached.put(nctId, trial);
+        }
+        return trial;
+    }
+
+    /**
+     * Record the chunk count and time of a finished ingest, and recompute the trial's vector
+     */
+    public void recordIngest(ClinicalTrial trial, int chunkCount) {
+        LocalDateTime now = LocalDateTime.now();
+        repository.updateIngested(trial.getNctId(), chunkCount, now);
+        trialVectors.refresh(trial.getNctId());
+        trial.setChunkCount(chunkCount);
+        trial.setLastIngestedAt(now);
+        trial.setLastCheckedAt(now);
+        trial.setFailureCount(0);
+    }
+
+    /**
+     * Record a refresh that kept the stored chunks because the content had not changed
+     */
+    public void recordUnchanged(ClinicalTrial trial) {
+        LocalDateTime now = LocalDateTime.now();
+        repository.updateChecked(trial.getNctId(), now);
+        trial.setLastCheckedAt(now);
+        trial.setFailureCount(0);
+    }
+
+    /**
+     * Record a failed attempt; trials that never ingested get a registry row without chunks
+     */
+    public void recordFailure(String nctId, String fileName, String sourceUrl) {
+        repository.upsertFailure(nctId, fileName, sourceUrl, LocalDateTime.now());
+
+        Map<String, ClinicalTrial> cached = trials;
+        if (cached != null) {
+            repository.findById(nctId).ifPresent(trial -> cached.put(nctId, trial));
+        }
+    }
+
+    /**
+     * Recompute all trial vectors and their index, e.g. for a corpus ingested before they existed
+     */
+    public void rebuildTrialVectors() {
+        long start = System.currentTimeMillis();
+        int trials = trialVectors.rebuildAll();
+        corpusVersion.bump();
+        LOG.info("Rebuilt {} trial vectors in {}s", trials, (System.currentTimeMillis() - start) / 1000);
+    }
+
+    public static String contentHash(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
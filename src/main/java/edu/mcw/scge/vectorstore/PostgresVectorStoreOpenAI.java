@@ -2,71 +2,295 @@ package edu.mcw.scge.vectorstore;
 
 import com.pgvector.PGvector;
 import edu.mcw.scge.model.DocumentEmbeddingOpenAI;
+import edu.mcw.scge.profiling.IngestEvents;
+import edu.mcw.scge.profiling.IngestStageEvent;
+import edu.mcw.scge.repository.CorpusVersionRepository;
 import edu.mcw.scge.repository.DocumentEmbeddingOpenAIRepository;
+import edu.mcw.scge.repository.DocumentEmbeddingOpenAIRepositoryCustom.TrialNeighbor;
+import edu.mcw.scge.service.ChunkDeduplicator;
+import edu.mcw.scge.service.ChunkDeduplicator.ChunkFingerprint;
+import edu.mcw.scge.service.ChunkDeduplicator.Match;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
 import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class PostgresVectorStoreOpenAI implements VectorStore {
     private static final Logger LOG = LoggerFactory.getLogger(PostgresVectorStoreOpenAI.class);
+
+    // Reciprocal rank fusion constant; 60 is the value from the original RRF paper
+    private static final int RRF_K = 60;
+    // Each ranking contributes at least this many candidates to the fusion
+    private static final int MIN_HYBRID_CANDIDATES = 50;
+    // Binary-quantized candidates fetched per requested result before the exact rerank
+    private static final int DEFAULT_OVERSAMPLE = 4;
+    // Nearest chunks fetched per requested trial before grouping
+    private static final int DEFAULT_GROUPED_CANDIDATES_PER_TRIAL = 20;
+    // Trials whose chunks hierarchical search ranks
+    private static final int DEFAULT_HIERARCHICAL_TRIALS = 20;
+    // An HNSW scan returns at most hnsw.ef_search rows, which pgvector caps at 1000
+    private static final int MAX_GROUPED_CANDIDATES = 1000;
     private final DocumentEmbeddingOpenAIRepository repository;
     private final EmbeddingModel embeddingModel;
+    // Model and dimensions sent with every embedding request; null uses the model's defaults
+    private final EmbeddingOptions embeddingOptions;
+    private final ChunkDeduplicator deduplicator;
+    // Bumped on every write; null when nothing else reads this store
+    private final CorpusVersionRepository corpusVersion;
+    // Ties a duplicate's insert to the check of its canonical row, and a handover to its delete
+    private TransactionTemplate transactions;
+
+    // Two-phase search settings, see quantizedSearch
+    private boolean quantizedByDefault;
+    private int oversample = DEFAULT_OVERSAMPLE;
+    private int groupedCandidatesPerTrial = DEFAULT_GROUPED_CANDIDATES_PER_TRIAL;
+    private int hierarchicalTrials = DEFAULT_HIERARCHICAL_TRIALS;
+
+    private SearchResultCache resultCache;
+
+    // Per-phase search timings, summarized in the log every latencyReportEvery searches (0 = never)
+    private final SearchLatencyStats latency = new SearchLatencyStats();
+    private final AtomicLong searches = new AtomicLong();
+    private int latencyReportEvery;
+    private SlowQueryLog slowQueryLog;
+
+    // Embedding tokens spent by this store since startup
+    private final AtomicLong embeddingTokens = new AtomicLong();
 
     public PostgresVectorStoreOpenAI(DocumentEmbeddingOpenAIRepository repository, EmbeddingModel embeddingModel) {
+        this(repository, embeddingModel, null, null, null);
+    }
+
+    public PostgresVectorStoreOpenAI(DocumentEmbeddingOpenAIRepository repository, EmbeddingModel embeddingModel,
+                                     EmbeddingOptions embeddingOptions, ChunkDeduplicator deduplicator,
+                                     CorpusVersionRepository corpusVersion) {
         this.repository = repository;
         this.embeddingModel = embeddingModel;
+        this.embeddingOptions = embeddingOptions;
+        this.deduplicator = deduplicator;
+        this.corpusVersion = corpusVersion;
+    }
+
+    /**
+     * Route similaritySearch through quantizedSearch, fetching oversample x topK candidates
+     */
+    public void configureQuantizedSearch(boolean byDefault, int oversample) {
+        this.quantizedByDefault = byDefault;
+        this.oversample = Math.max(1, oversample);
+    }
+
+    /**
+     * Nearest chunks groupedSearch fetches per requested trial before grouping them by trial
+     */
+    public void configureGroupedSearch(int candidatesPerTrial) {
+        this.groupedCandidatesPerTrial = Math.max(1, candidatesPerTrial);
+    }
+
+    /**
+     * Run deduplicated inserts and deletes in transactions of this manager (joining the caller's)
+     */
+    public void configureTransactions(PlatformTransactionManager transactionManager) {
+        this.transactions = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Trials hierarchicalSearch picks by trial vector before ranking their chunks
+     */
+    public void configureHierarchicalSearch(int trials) {
+        this.hierarchicalTrials = Math.max(1, trials);
+    }
+
+    /**
+     * Cache up to maxEntries search results per corpus version (0 disables caching)
+     */
+    public void enableResultCache(int maxEntries) {
+        if (maxEntries > 0 && corpusVersion == null) {
+            throw new IllegalStateException("Result caching needs the corpus version counter");
+        }
+        this.resultCache = maxEntries > 0 ? new SearchResultCache(maxEntries) : null;
+    }
+
+    /**
+     * Log statement, parameters and EXPLAIN (ANALYZE, BUFFERS) of searches whose SQL takes at least
+     * thresholdMillis (0 disables), explaining at most one statement per explainIntervalSeconds
+     */
+    public void enableSlowQueryLog(long thresholdMillis, long explainIntervalSeconds) {
+        this.slowQueryLog = thresholdMillis > 0
+                ? new SlowQueryLog(repository, thresholdMillis, explainIntervalSeconds)
+                : null;
     }
 
+    /**
+     * Log the latency histograms after every n searches (0 = never)
+     */
+    public void reportLatencyEvery(int n) {
+        this.latencyReportEvery = Math.max(0, n);
+    }
+
+    public SearchLatencyStats getLatencyStats() {
+        return latency;
+    }
+
+    /**
+     * Embed texts in one request with the configured model and dimensions
+     */
+    public EmbeddingResponse embed(List<String> texts) {
+        IngestStageEvent event = IngestEvents.stage(IngestEvents.EMBED);
+        EmbeddingResponse response = embeddingOptions == null
+                ? embeddingModel.embedForResponse(texts)
+                : embeddingModel.call(new EmbeddingRequest(texts, embeddingOptions));
+        embeddingTokens.addAndGet(tokensUsed(response, texts));
+        event.end(-1, texts.stream().mapToLong(String::length).sum(), texts.size());
+        return response;
+    }
+
+    public long getEmbeddingTokens() {
+        return embeddingTokens.get();
+    }
+
+    /**
+     * Reported prompt tokens, or roughly 4 characters per token when the response has no usage
+     */
+    public static long tokensUsed(EmbeddingResponse response, List<String> texts) {
+        if (response.getMetadata() != null && response.getMetadata().getUsage() != null) {
+            Long promptTokens = response.getMetadata().getUsage().getPromptTokens();
+            if (promptTokens != null && promptTokens > 0) {
+                return promptTokens;
+            }
+        }
+        return texts.stream().mapToLong(String::length).sum() / 4;
+    }
+
+    /**
+     * Embed and store documents. With deduplication on, a chunk that repeats a stored one is saved
+     * as a reference to it (duplicate_of) without an embedding; exact repeats also drop their text.
+     */
     @Override
     public void add(List<Document> documents) {
         LOG.info("Adding {} documents to OpenAI vector store", documents.size());
+        boolean dedup = deduplicator != null && deduplicator.isEnabled();
+        int duplicates = 0;
+        int saved = 0;
 
         for (Document doc : documents) {
             try {
-                // Generate embedding for the document content
-                float[] embedding = embeddingModel.embed(List.of(doc.getContent())).get(0);
-
-                // Create and save the document embedding
+                // Create the document embedding row
                 DocumentEmbeddingOpenAI docEmbedding = new DocumentEmbeddingOpenAI();
                 docEmbedding.setChunk(doc.getContent());
-                docEmbedding.setEmbedding(new PGvector(embedding));
                 docEmbedding.setFileName(doc.getMetadata().getOrDefault("filename", "unknown").toString());
+                Object nctId = doc.getMetadata().get("nct_id");
+                docEmbedding.setNctId(nctId != null ? nctId.toString() : null);
                 docEmbedding.setCreatedAt(LocalDateTime.now());
 
-                repository.save(docEmbedding);
+                ChunkFingerprint fingerprint = null;
+                if (dedup) {
+                    fingerprint = deduplicator.fingerprint(doc.getContent());
+                    docEmbedding.setContentHash(fingerprint.contentHash());
+                    docEmbedding.setSimhash(fingerprint.simhash());
+
+                    // The canonical row stays locked until the duplicate referencing it is stored
+                    ChunkFingerprint chunkFingerprint = fingerprint;
+                    DocumentEmbeddingOpenAI duplicate = docEmbedding;
+                    Match match = inTransaction(() -> {
+                        Match canonical = deduplicator.findCanonical(chunkFingerprint);
+                        if (canonical != null) {
+                            duplicate.setDuplicateOf(canonical.canonicalId());
+                            if (canonical.exact()) {
+                                duplicate.setChunk(null);
+                            }
+                            persist(duplicate);
+                        }
+                        return canonical;
+                    });
+                    if (match != null) {
+                        saved++;
+                        duplicates++;
+                        LOG.debug("Chunk from {} is {} duplicate of {}, not embedded",
+                                docEmbedding.getFileName(), match.exact() ? "an exact" : "a near", match.canonicalId());
+                        continue;
+                    }
+                }
+
+                // Generate embedding for the document content
+                float[] embedding = embed(List.of(doc.getContent())).getResults().get(0).getOutput();
+                docEmbedding.setEmbedding(new PGvector(embedding));
+
+                docEmbedding = persist(docEmbedding);
+                saved++;
+                if (fingerprint != null) {
+                    deduplicator.register(docEmbedding.getId(), fingerprint);
+                }
                 LOG.debug("Saved document chunk: {} characters from {}",
                         doc.getContent().length(), docEmbedding.getFileName());
 
             } catch (Exception e) {
                 LOG.error("Failed to add document to OpenAI vector store: {}", e.getMessage(), e);
+                if (saved > 0) {
+                    bumpCorpusVersion();
+                }
                 throw new RuntimeException("Failed to add document to OpenAI vector store", e);
             }
         }
 
-        LOG.info("Successfully added all {} documents to OpenAI vector store", documents.size());
+        if (saved > 0) {
+            bumpCorpusVersion();
+        }
+
+        LOG.info("Successfully added all {} documents to OpenAI vector store ({} duplicates not embedded)",
+                documents.size(), duplicates);
+    }
+
+    private <T> T inTransaction(Supplier<T> work) {
+        return transactions != null ? transactions.execute(status -> work.get()) : work.get();
+    }
+
+    private DocumentEmbeddingOpenAI persist(DocumentEmbeddingOpenAI docEmbedding) {
+        IngestStageEvent event = IngestEvents.stage(IngestEvents.PERSIST);
+        DocumentEmbeddingOpenAI saved = repository.save(docEmbedding);
+        event.end(-1, docEmbedding.getChunk() != null ? docEmbedding.getChunk().length() : 0, 1);
+        return saved;
     }
 
     @Override
     public List<Document> similaritySearch(SearchRequest request) {
+        if (quantizedByDefault) {
+            return quantizedSearch(request);
+        }
+        return cached("exact", request, this::runExactSearch);
+    }
+
+    private List<Document> runExactSearch(SearchRequest request) {
         LOG.info("Starting OpenAI similarity search for query: '{}'", request.getQuery());
         LOG.info("Search parameters - TopK: {}, Similarity threshold: {}",
                 request.getTopK(), request.getSimilarityThreshold());
 
         try {
+            long start = System.nanoTime();
             // Generate embedding for the search query
-            EmbeddingResponse response = embeddingModel.embedForResponse(List.of(request.getQuery()));
+            EmbeddingResponse response = embed(List.of(request.getQuery()));
             float[] queryEmbedding = response.getResults().get(0).getOutput();
             LOG.debug("Generated query embedding vector of size: {}", queryEmbedding.length);
+            long embedded = System.nanoTime();
 
             // Find nearest neighbors from the database
             List<DocumentEmbeddingOpenAI> nearest;
@@ -77,20 +301,15 @@ public class PostgresVectorStoreOpenAI implements VectorStore {
             } else {
                 nearest = repository.findNearestNeighbors(queryEmbedding, request.getTopK());
             }
+            long queried = System.nanoTime();
 
             LOG.info("Found {} documents in OpenAI database", nearest.size());
 
             // Convert to Document objects
             List<Document> results = nearest.stream()
-                    .map(de -> {
-                        Map<String, Object> metadata = Map.of(
-                                "filename", de.getFileName(),
-                                "id", de.getId(),
-                                "created_at", de.getCreatedAt()
-                        );
-                        return new Document(de.getChunk(), metadata);
-                    })
+                    .map(this::toDocument)
                     .collect(Collectors.toList());
+            long mapped = System.nanoTime();
 
             // Log some details about the returned documents
             for (int i = 0; i < Math.min(3, results.size()); i++) {
@@ -100,7 +319,14 @@ public class PostgresVectorStoreOpenAI implements VectorStore {
                         doc.getMetadata().get("filename"));
             }
 
-            LOG.info("Returning {} documents from OpenAI similarity search", results.size());
+            recordLatency("exact", start, embedded, queried, mapped,
+                    request.getSimilarityThreshold() > 0
+                            ? DocumentEmbeddingOpenAIRepository.NEAREST_WITH_THRESHOLD_SQL
+                            : DocumentEmbeddingOpenAIRepository.NEAREST_SQL,
+                    () -> Map.of("queryEmbedding", queryEmbedding, "k", request.getTopK(),
+                            "threshold", request.getSimilarityThreshold()), 0);
+            LOG.info("Returning {} documents from OpenAI similarity search ({})",
+                    results.size(), phases(start, embedded, queried, mapped));
             return results;
 
         } catch (Exception e) {
@@ -109,10 +335,286 @@ public class PostgresVectorStoreOpenAI implements VectorStore {
         }
     }
 
+    /**
+     * Similarity search for many requests at once, results grouped per request in input order.
+     * <p>
+     * All queries are embedded in a single embedding request, and all nearest-neighbor lookups run
+     * as one SQL statement (a LATERAL join over the array of query vectors), so the cost is two
+     * round trips regardless of how many questions are asked. Each request keeps its own topK and
+     * similarity threshold.
+     */
+    public List<List<Document>> batchSimilaritySearch(List<SearchRequest> requests) {
+        LOG.info("Starting OpenAI batch similarity search for {} queries", requests.size());
+        if (requests.isEmpty()) {
+            return List.of();
+        }
+
+        try {
+            long start = System.nanoTime();
+            EmbeddingResponse response = embed(requests.stream().map(SearchRequest::getQuery).toList());
+            List<float[]> queryEmbeddings = response.getResults().stream()
+                    .map(Embedding::getOutput)
+                    .toList();
+            long embedded = System.nanoTime();
+
+            int[] ks = requests.stream().mapToInt(SearchRequest::getTopK).toArray();
+            double[] thresholds = requests.stream().mapToDouble(SearchRequest::getSimilarityThreshold).toArray();
+            List<List<DocumentEmbeddingOpenAI>> nearest = repository.findNearestNeighborsBatch(queryEmbeddings, ks, thresholds);
+            long queried = System.nanoTime();
+
+            List<List<Document>> results = nearest.stream()
+                    .map(perQuery -> perQuery.stream().map(this::toDocument).collect(Collectors.toList()))
+                    .collect(Collectors.toList());
+            long mapped = System.nanoTime();
+
+            recordLatency("batch", start, embedded, queried, mapped, repository.batchNearestSql(),
+                    () -> repository.batchNearestParams(queryEmbeddings, ks, thresholds), 0);
+            LOG.info("Returning {} documents for {} queries from OpenAI batch similarity search ({})",
+                    results.stream().mapToInt(List::size).sum(), results.size(), phases(start, embedded, queried, mapped));
+            return results;
+
+        } catch (Exception e) {
+            LOG.error("Error during OpenAI batch similarity search: {}", e.getMessage(), e);
+            throw new RuntimeException("OpenAI batch similarity search failed", e);
+        }
+    }
+
+    /**
+     * Hybrid lexical + vector search in a single SQL round trip.
+     * <p>
+     * The cosine-distance ranking and the full-text (ts_rank_cd) ranking each contribute their top
+     * candidates, which are fused with reciprocal rank fusion. Exact tokens such as NCT IDs, gene
+     * names and serotypes that embed poorly are still found through the lexical ranking.
+     * The similarity threshold does not apply, since fused scores are not similarities.
+     */
+    public List<Document> hybridSearch(SearchRequest request) {
+        return cached("hybrid", request, this::runHybridSearch);
+    }
+
+    private List<Document> runHybridSearch(SearchRequest request) {
+        LOG.info("Starting OpenAI hybrid search for query: '{}'", request.getQuery());
+
+        try {
+            long start = System.nanoTime();
+            EmbeddingResponse response = embed(List.of(request.getQuery()));
+            float[] queryEmbedding = response.getResults().get(0).getOutput();
+            long embedded = System.nanoTime();
+
+            int candidates = Math.max(request.getTopK() * 4, MIN_HYBRID_CANDIDATES);
+            List<DocumentEmbeddingOpenAI> fused = repository.findHybrid(
+                    queryEmbedding, request.getQuery(), request.getTopK(), candidates, RRF_K);
+            long queried = System.nanoTime();
+
+            List<Document> results = fused.stream()
+                    .map(this::toDocument)
+                    .collect(Collectors.toList());
+            long mapped = System.nanoTime();
+
+            recordLatency("hybrid", start, embedded, queried, mapped, DocumentEmbeddingOpenAIRepository.HYBRID_SQL,
+                    () -> Map.of("queryEmbedding", queryEmbedding, "queryText", request.getQuery(),
+                            "k", request.getTopK(), "candidates", candidates, "rrfK", RRF_K), 0);
+            LOG.info("Returning {} documents from OpenAI hybrid search ({})",
+                    results.size(), phases(start, embedded, queried, mapped));
+            return results;
+
+        } catch (Exception e) {
+            LOG.error("Error during OpenAI hybrid search: {}", e.getMessage(), e);
+            throw new RuntimeException("OpenAI hybrid search failed", e);
+        }
+    }
+
+    /**
+     * Similarity search for the topK closest distinct trials rather than the topK closest chunks.
+     * <p>
+     * A trial with many similar chunks would otherwise fill the whole result. The nearest
+     * candidatesPerTrial x topK chunks (at most 1000) are grouped by trial in SQL, trials are ranked
+     * by their best chunk and each comes with up to chunksPerTrial of its closest chunks. Fewer than
+     * topK trials come back when the candidate set holds fewer; chunks outside any trial (crawled
+     * pages) group by filename.
+     */
+    public List<TrialMatch> groupedSearch(SearchRequest request, int chunksPerTrial) {
+        List<Document> chunks = cached("grouped" + chunksPerTrial, request,
+                r -> runGroupedSearch(r, Math.max(1, chunksPerTrial)));
+
+        Map<String, List<Document>> byTrial = new LinkedHashMap<>();
+        for (Document chunk : chunks) {
+            byTrial.computeIfAbsent(chunk.getMetadata().get("trial_key").toString(), key -> new ArrayList<>()).add(chunk);
+        }
+        return byTrial.entrySet().stream()
+                .map(trial -> {
+                    Map<String, Object> best = trial.getValue().get(0).getMetadata();
+                    return new TrialMatch(trial.getKey(), (String) best.get("nct_id"),
+                            ((Number) best.get("score")).doubleValue(), List.copyOf(trial.getValue()));
+                })
+                .collect(Collectors.toList());
+    }
+
+    // Flat, in trial order; chunks carry trial_key, nct_id and score so the cached list can be regrouped
+    private List<Document> runGroupedSearch(SearchRequest request, int chunksPerTrial) {
+        LOG.info("Starting OpenAI grouped search for query: '{}'", request.getQuery());
+
+        try {
+            long start = System.nanoTime();
+            EmbeddingResponse response = embed(List.of(request.getQuery()));
+            float[] queryEmbedding = response.getResults().get(0).getOutput();
+            long embedded = System.nanoTime();
+
+            int candidates = (int) Math.min((long) request.getTopK() * groupedCandidatesPerTrial, MAX_GROUPED_CANDIDATES);
+            List<TrialNeighbor> nearest = repository.findNearestTrials(
+                    queryEmbedding, request.getTopK(), chunksPerTrial, candidates, request.getSimilarityThreshold());
+            long queried = System.nanoTime();
+
+            List<Document> results = nearest.stream()
+                    .map(neighbor -> {
+                        Document doc = toDocument(neighbor.chunk());
+                        Map<String, Object> metadata = new HashMap<>(doc.getMetadata());
+                        metadata.put("trial_key", neighbor.trialKey());
+                        if (neighbor.chunk().getNctId() != null) {
+                            metadata.put("nct_id", neighbor.chunk().getNctId());
+                        }
+                        metadata.put("score", 1 - neighbor.distance());
+                        return new Document(doc.getContent(), metadata);
+                    })
+                    .collect(Collectors.toList());
+            long mapped = System.nanoTime();
+
+            recordLatency("grouped", start, embedded, queried, mapped,
+                    repository.groupedNearestSql(request.getSimilarityThreshold()),
+                    () -> repository.groupedNearestParams(queryEmbedding, request.getTopK(), chunksPerTrial,
+                            candidates, request.getSimilarityThreshold()),
+                    repository.efSearchFor(candidates));
+            LOG.info("Returning {} chunks of {} trials from OpenAI grouped search ({} candidates, {})",
+                    results.size(), nearest.isEmpty() ? 0 : nearest.get(nearest.size() - 1).trialRank(),
+                    candidates, phases(start, embedded, queried, mapped));
+            return results;
+
+        } catch (Exception e) {
+            LOG.error("Error during OpenAI grouped search: {}", e.getMessage(), e);
+            throw new RuntimeException("OpenAI grouped search failed", e);
+        }
+    }
+
+    /**
+     * Two-tier similarity search over trial vectors, then chunks.
+     * <p>
+     * The query is first compared with one vector per trial (the mean of its chunk embeddings, see
+     * TrialVectorRepository) to pick the nearest trials, and only those trials' chunks are ranked
+     * exactly. The cost follows the number of trials rather than the number of chunks, and every
+     * result comes from a trial that is relevant as a whole. Chunks outside any trial (crawled
+     * pages) are not searched.
+     */
+    public List<Document> hierarchicalSearch(SearchRequest request) {
+        return cached("hierarchical", request, this::runHierarchicalSearch);
+    }
+
+    private List<Document> runHierarchicalSearch(SearchRequest request) {
+        LOG.info("Starting OpenAI hierarchical search for query: '{}'", request.getQuery());
+
+        try {
+            long start = System.nanoTime();
+            EmbeddingResponse response = embed(List.of(request.getQuery()));
+            float[] queryEmbedding = response.getResults().get(0).getOutput();
+            long embedded = System.nanoTime();
+
+            int trials = hierarchicalTrials;
+            List<DocumentEmbeddingOpenAI> nearest = repository.findNearestNeighborsHierarchical(
+                    queryEmbedding, request.getTopK(), trials, request.getSimilarityThreshold());
+            long queried = System.nanoTime();
+
+            List<Document> results = nearest.stream()
+                    .map(this::toDocument)
+                    .collect(Collectors.toList());
+            long mapped = System.nanoTime();
+
+            recordLatency("hierarchical", start, embedded, queried, mapped,
+                    repository.hierarchicalNearestSql(request.getSimilarityThreshold()),
+                    () -> repository.hierarchicalNearestParams(queryEmbedding, request.getTopK(), trials,
+                            request.getSimilarityThreshold()),
+                    repository.efSearchFor(trials));
+            LOG.info("Returning {} documents from OpenAI hierarchical search ({} trials, {})",
+                    results.size(), trials, phases(start, embedded, queried, mapped));
+            return results;
+
+        } catch (Exception e) {
+            LOG.error("Error during OpenAI hierarchical search: {}", e.getMessage(), e);
+            throw new RuntimeException("OpenAI hierarchical search failed", e);
+        }
+    }
+
+    /**
+     * Two-phase similarity search.
+     * <p>
+     * Phase one walks an HNSW index over 1-bit-per-dimension copies of the embeddings by Hamming
+     * distance and takes oversample x topK candidates; phase two orders just those candidates by
+     * exact cosine distance and applies the similarity threshold. The bit index is 32 times smaller
+     * than the float vectors, at the cost of missing neighbors the coarse phase ranks too low.
+     */
+    public List<Document> quantizedSearch(SearchRequest request) {
+        return cached("quantized", request, this::runQuantizedSearch);
+    }
+
+    private List<Document> runQuantizedSearch(SearchRequest request) {
+        LOG.info("Starting OpenAI quantized search for query: '{}'", request.getQuery());
+
+        try {
+            long start = System.nanoTime();
+            EmbeddingResponse response = embed(List.of(request.getQuery()));
+            float[] queryEmbedding = response.getResults().get(0).getOutput();
+            long embedded = System.nanoTime();
+
+            int candidates = request.getTopK() * oversample;
+            List<DocumentEmbeddingOpenAI> nearest = repository.findNearestNeighborsQuantized(
+                    queryEmbedding, request.getTopK(), candidates, request.getSimilarityThreshold());
+            long queried = System.nanoTime();
+
+            List<Document> results = nearest.stream()
+                    .map(this::toDocument)
+                    .collect(Collectors.toList());
+            long mapped = System.nanoTime();
+
+            recordLatency("quantized", start, embedded, queried, mapped,
+                    repository.quantizedNearestSql(request.getSimilarityThreshold()),
+                    () -> request.getSimilarityThreshold() > 0
+                            ? Map.of("queryEmbedding", queryEmbedding, "k", request.getTopK(),
+                                    "candidates", candidates, "threshold", request.getSimilarityThreshold())
+                            : Map.of("queryEmbedding", queryEmbedding, "k", request.getTopK(), "candidates", candidates),
+                    repository.efSearchFor(candidates));
+            LOG.info("Returning {} documents from OpenAI quantized search ({}x oversampling, {})",
+                    results.size(), oversample, phases(start, embedded, queried, mapped));
+            return results;
+
+        } catch (Exception e) {
+            LOG.error("Error during OpenAI quantized search: {}", e.getMessage(), e);
+            throw new RuntimeException("OpenAI quantized search failed", e);
+        }
+    }
+
+    /**
+     * Delete chunks by id; chunks that duplicates still reference hand their content over first
+     */
     @Override
     public Optional<Boolean> delete(List<String> ids) {
-        LOG.warn("Delete operation called but not implemented");
-        throw new UnsupportedOperationException("Delete operation not implemented");
+        List<Long> chunkIds = ids.stream().map(Long::valueOf).toList();
+        if (chunkIds.isEmpty()) {
+            return Optional.of(true);
+        }
+
+        try {
+            int deleted = inTransaction(() -> {
+                if (deduplicator != null) {
+                    deduplicator.beforeChunkDelete(chunkIds);
+                }
+                return repository.deleteByIds(chunkIds);
+            });
+            bumpCorpusVersion();
+
+            LOG.info("Deleted {} of {} requested documents from OpenAI vector store", deleted, chunkIds.size());
+            return Optional.of(deleted == chunkIds.size());
+
+        } catch (Exception e) {
+            LOG.error("Failed to delete documents from OpenAI vector store: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to delete documents from OpenAI vector store", e);
+        }
     }
 
     // Additional helper method to check vector store health
@@ -122,6 +624,74 @@ public class PostgresVectorStoreOpenAI implements VectorStore {
         return count;
     }
 
+    /**
+     * Run a search through the result cache, if enabled
+     */
+    private List<Document> cached(String kind, SearchRequest request, Function<SearchRequest, List<Document>> search) {
+        if (resultCache == null) {
+            return search.apply(request);
+        }
+
+        long version = corpusVersion.current();
+        SearchResultCache.Key key = SearchResultCache.keyFor(kind, request);
+        List<Document> results = resultCache.get(key, version);
+        if (results != null) {
+            LOG.info("Returning {} cached documents for {} search: '{}'", results.size(), kind, request.getQuery());
+            return results;
+        }
+
+        results = search.apply(request);
+        resultCache.put(key, version, results);
+        LOG.debug("Search result cache: {}", resultCache.stats());
+        return results;
+    }
+
+    /**
+     * Record the phase timings of one search; a slow SQL phase goes to the slow-query log
+     */
+    private void recordLatency(String kind, long start, long embedded, long queried, long mapped,
+                               String sql, Supplier<Map<String, Object>> params, int efSearch) {
+        latency.record(kind, "embed", embedded - start);
+        latency.record(kind, "sql", queried - embedded);
+        latency.record(kind, "map", mapped - queried);
+        latency.record(kind, "total", mapped - start);
+
+        if (slowQueryLog != null && slowQueryLog.isSlow(queried - embedded)) {
+            slowQueryLog.capture(kind, queried - embedded, sql, params.get(), efSearch);
+        }
+        long count = searches.incrementAndGet();
+        if (latencyReportEvery > 0 && count % latencyReportEvery == 0) {
+            LOG.info("Search latency after {} searches:{}", count, latency.summary());
+        }
+    }
+
+    private static String phases(long start, long embedded, long queried, long mapped) {
+        return String.format("embed %.1fms, sql %.1fms, map %.1fms",
+                (embedded - start) / 1_000_000.0, (queried - embedded) / 1_000_000.0, (mapped - queried) / 1_000_000.0);
+    }
+
+    private void bumpCorpusVersion() {
+        if (corpusVersion != null) {
+            corpusVersion.bump();
+        }
+    }
+
+    private Document toDocument(DocumentEmbeddingOpenAI de) {
+        Map<String, Object> metadata = Map.of(
+                "filename", de.getFileName(),
+                "id", de.getId(),
+                "created_at", de.getCreatedAt()
+        );
+        return new Document(de.getChunk(), metadata);
+    }
+
+    /**
+     * Ids of the chunks stored under a filename, as accepted by {@link #delete(List)}
+     */
+    public List<String> getDocumentIds(String fileName) {
+        return repository.findIdsByFileName(fileName).stream().map(String::valueOf).toList();
+    }
+
     // Method to get unique filenames in the vector store
     public List<String> getAvailableFiles() {
         return repository.findDistinctFileNames();
@@ -0,0 +1,104 @@
+package edu.mcw.scge.vectorstore;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of the search path, one per search kind and phase.
+ * <p>
+ * Phases are {@code embed} (query embedding call), {@code sql} (database round trip), {@code map}
+ * (rows to Documents) and {@code total}. Buckets are a quarter of a power of two wide, so reported
+ * percentiles are upper bounds at most 25% above the true value; recording is lock-free.
+ */
+public class SearchLatencyStats {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+    private static final int[] PERCENTILES = {50, 90, 99};
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public void record(String kind, String phase, long nanos) {
+        histograms.computeIfAbsent(kind + "." + phase, k -> new Histogram()).record(nanos);
+    }
+
+    /**
+     * Milliseconds at the given percentile (0-100), or 0 if nothing was recorded
+     */
+    public double percentileMillis(String kind, String phase, int percentile) {
+        Histogram histogram = histograms.get(kind + "." + phase);
+        return histogram != null ? histogram.percentile(percentile) / 1_000_000.0 : 0;
+    }
+
+    /**
+     * One line per kind and phase: count, p50/p90/p99 and max in milliseconds
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            summary.append(String.format("%n  %-16s n=%-7d", entry.getKey(), histogram.count()));
+            for (int percentile : PERCENTILES) {
+                summary.append(String.format(" p%d=%.1fms", percentile, histogram.percentile(percentile) / 1_000_000.0));
+            }
+            summary.append(String.format(" max=%.1fms", histogram.max.get() / 1_000_000.0));
+        }
+        return summary.toString();
+    }
+
+    private static final class Histogram {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            counts.incrementAndGet(bucket(value));
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        long percentile(int percentile) {
+            long total = count();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        // Exponent of the highest set bit plus the two bits below it
+        private static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return exponent * SUB_BUCKETS + (int) ((value >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS;
+            long subBucket = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + subBucket + 1) << (exponent - 2)) - 1;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package edu.mcw.scge.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU cache of search results, valid for one corpus version.
+ * <p>
+ * Lookups pass the current corpus version; when it differs from the version the entries were
+ * computed at, the whole cache is dropped. Results computed while the version moved on are not
+ * stored, so a search never returns rows from before the latest write.
+ */
+class SearchResultCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Map<Key, List<Document>> entries;
+    private long version = -1;
+    private long hits;
+    private long misses;
+
+    SearchResultCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Document>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized List<Document> get(Key key, long currentVersion) {
+        if (currentVersion != version) {
+            entries.clear();
+            version = currentVersion;
+        }
+        List<Document> results = entries.get(key);
+        if (results != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return results;
+    }
+
+    synchronized void put(Key key, long computedAtVersion, List<Document> results) {
+        if (computedAtVersion == version) {
+            entries.put(key, List.copyOf(results));
+        }
+    }
+
+    synchronized String stats() {
+        return entries.size() + " entries, " + hits + " hits, " + misses + " misses";
+    }
+
+    /**
+     * Cache key: search kind plus the request with the query's whitespace normalized
+     */
+    static Key keyFor(String kind, SearchRequest request) {
+        String query = WHITESPACE.matcher(request.getQuery().trim()).replaceAll(" ");
+        String filter = request.hasFilterExpression() ? request.getFilterExpression().toString() : null;
+        return new Key(kind, query, request.getTopK(), request.getSimilarityThreshold(), filter);
+    }
+
+    record Key(String kind, String query, int topK, double threshold, String filter) {
+    }
+}
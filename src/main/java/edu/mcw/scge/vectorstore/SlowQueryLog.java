@@ -0,0 +1,96 @@
+package edu.mcw.scge.vectorstore;
+
+import edu.mcw.scge.repository.DocumentEmbeddingOpenAIRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Captures searches whose SQL phase exceeds a threshold: the statement, its parameters (query
+ * vectors left out) and its EXPLAIN (ANALYZE, BUFFERS) plan, written to the
+ * {@code edu.mcw.scge.slowquery} logger (slow-query.log in log4j2.xml).
+ * <p>
+ * EXPLAIN ANALYZE runs the statement again, so plans are captured on a background thread, one at a
+ * time and at most once per interval; slow searches in between are still logged without a plan.
+ */
+class SlowQueryLog {
+    private static final Logger LOG = LoggerFactory.getLogger(SlowQueryLog.class);
+    private static final Logger SLOW_LOG = LoggerFactory.getLogger("edu.mcw.scge.slowquery");
+
+    private final DocumentEmbeddingOpenAIRepository repository;
+    private final long thresholdNanos;
+    private final long explainIntervalNanos;
+    private final AtomicLong lastExplain = new AtomicLong(Long.MIN_VALUE);
+
+    // A single explaining thread; captures arriving while it is busy go without a plan
+    private final ThreadPoolExecutor explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(), r -> {
+                Thread thread = new Thread(r, "slow-query-explain");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    SlowQueryLog(DocumentEmbeddingOpenAIRepository repository, long thresholdMillis, long explainIntervalSeconds) {
+        this.repository = repository;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.explainIntervalNanos = TimeUnit.SECONDS.toNanos(explainIntervalSeconds);
+    }
+
+    boolean isSlow(long sqlNanos) {
+        return sqlNanos >= thresholdNanos;
+    }
+
+    /**
+     * Log a slow statement and, unless one was explained within the interval, its plan
+     *
+     * @param efSearch hnsw.ef_search the statement ran with (0 = server default)
+     */
+    void capture(String kind, long sqlNanos, String sql, Map<String, Object> params, int efSearch) {
+        String header = String.format("Slow %s search: %.1fms%n  SQL: %s%n  Parameters: %s",
+                kind, sqlNanos / 1_000_000.0, sql, printable(params));
+
+        long now = System.nanoTime();
+        long last = lastExplain.get();
+        boolean explain = (last == Long.MIN_VALUE || now - last >= explainIntervalNanos) &&
+                explainer.getActiveCount() == 0 && lastExplain.compareAndSet(last, now);
+        if (!explain) {
+            SLOW_LOG.warn("{}\n  (plan not captured; plans are captured one at a time, at most once per {}s)",
+                    header, TimeUnit.NANOSECONDS.toSeconds(explainIntervalNanos));
+            return;
+        }
+
+        explainer.execute(() -> {
+            try {
+                List<String> plan = repository.explainAnalyze(sql, params, efSearch);
+                SLOW_LOG.warn("{}\n  Plan:\n    {}", header, String.join("\n    ", plan));
+            } catch (Exception e) {
+                SLOW_LOG.warn("{}\n  (EXPLAIN failed: {})", header, e.getMessage());
+                LOG.debug("EXPLAIN of slow {} search failed", kind, e);
+            }
+        });
+    }
+
+    // Query vectors are thousands of numbers and say nothing about the plan
+    private static Map<String, Object> printable(Map<String, Object> params) {
+        Map<String, Object> printable = new LinkedHashMap<>();
+        params.forEach((name, value) -> {
+            if (value instanceof float[] vector) {
+                printable.put(name, "<vector(" + vector.length + ")>");
+            } else if (value instanceof String[] vectors && "vectors".equals(name)) {
+                printable.put(name, "<" + vectors.length + " vectors>");
+            } else if (value instanceof Object[] array) {
+                printable.put(name, List.of(array));
+            } else {
+                printable.put(name, value);
+            }
+        });
+        return printable;
+    }
+}
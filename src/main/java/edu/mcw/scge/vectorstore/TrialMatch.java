@@ -0,0 +1,16 @@
+package edu.mcw.scge.vectorstore;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * One trial of a grouped search result
+ *
+ * @param trialKey NCT ID of the trial, or the filename of a page that belongs to no trial
+ * @param nctId    NCT ID, or null for such pages
+ * @param score    cosine similarity of the trial's best chunk to the query
+ * @param chunks   the trial's closest chunks, best first; each carries its own "score" metadata
+ */
+public record TrialMatch(String trialKey, String nctId, double score, List<Document> chunks) {
+}
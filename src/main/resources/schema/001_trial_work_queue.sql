@@ -0,0 +1,14 @@
+-- Work queue for distributed ingestion (pipeline.mode=enqueue / worker)
+CREATE TABLE IF NOT EXISTS trial_work_queue (
+    nct_id           VARCHAR(32)  PRIMARY KEY,
+    status           VARCHAR(16)  NOT NULL DEFAULT 'PENDING',
+    lease_owner      VARCHAR(128),
+    lease_expires_at TIMESTAMPTZ,
+    attempts         INTEGER      NOT NULL DEFAULT 0,
+    last_error       TEXT,
+    enqueued_at      TIMESTAMPTZ  NOT NULL DEFAULT now(),
+    updated_at       TIMESTAMPTZ  NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS trial_work_queue_claim_idx
+    ON trial_work_queue (status, lease_expires_at);
@@ -0,0 +1,18 @@
+-- Chunk table (matches DocumentEmbeddingOpenAI); a no-op on existing databases
+CREATE EXTENSION IF NOT EXISTS vector;
+
+CREATE TABLE IF NOT EXISTS document_embeddings (
+    id         BIGSERIAL    PRIMARY KEY,
+    embedding  vector(1536),
+    chunk      TEXT,
+    file_name  VARCHAR(255),
+    created_at TIMESTAMP
+);
+
+-- Full-text search over chunks (lexical leg of hybrid search)
+ALTER TABLE document_embeddings
+    ADD COLUMN IF NOT EXISTS chunk_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('english', coalesce(chunk, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS document_embeddings_chunk_tsv_idx
+    ON document_embeddings USING gin (chunk_tsv);
@@ -0,0 +1,31 @@
+-- Trial registry: one row per ingested trial, chunks reference it and go with it on delete
+CREATE TABLE IF NOT EXISTS clinical_trials (
+    nct_id           VARCHAR(32)  PRIMARY KEY,
+    file_name        VARCHAR(255) NOT NULL,
+    source_url       TEXT,
+    content_hash     CHAR(64),
+    chunk_count      INTEGER      NOT NULL DEFAULT 0,
+    last_ingested_at TIMESTAMP
+);
+
+ALTER TABLE document_embeddings
+    ADD COLUMN IF NOT EXISTS nct_id VARCHAR(32) REFERENCES clinical_trials (nct_id) ON DELETE CASCADE;
+
+CREATE INDEX IF NOT EXISTS document_embeddings_nct_id_idx
+    ON document_embeddings (nct_id);
+
+-- Backfill trials ingested before the registry existed ('CLINICAL TRIAL: ' is 16 characters)
+INSERT INTO clinical_trials (nct_id, file_name, source_url, chunk_count, last_ingested_at)
+SELECT substring(file_name FROM 17),
+       file_name,
+       'https://stage.scge.mcw.edu/platform/data/report/clinicalTrials/' || substring(file_name FROM 17),
+       COUNT(*),
+       MAX(created_at)
+FROM document_embeddings
+WHERE nct_id IS NULL AND file_name LIKE 'CLINICAL TRIAL: %'
+GROUP BY file_name
+ON CONFLICT (nct_id) DO NOTHING;
+
+UPDATE document_embeddings
+SET nct_id = substring(file_name FROM 17)
+WHERE nct_id IS NULL AND file_name LIKE 'CLINICAL TRIAL: %';
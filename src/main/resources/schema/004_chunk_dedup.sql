@@ -0,0 +1,17 @@
+-- Chunk deduplication: rows with duplicate_of set reference a canonical row that carries the
+-- embedding (and, for exact duplicates, the text) instead of storing their own copy
+ALTER TABLE document_embeddings ADD COLUMN IF NOT EXISTS content_hash CHAR(64);
+ALTER TABLE document_embeddings ADD COLUMN IF NOT EXISTS simhash BIGINT;
+ALTER TABLE document_embeddings
+    ADD COLUMN IF NOT EXISTS duplicate_of BIGINT REFERENCES document_embeddings (id) ON DELETE SET NULL;
+
+CREATE INDEX IF NOT EXISTS document_embeddings_content_hash_idx
+    ON document_embeddings (content_hash) WHERE duplicate_of IS NULL;
+
+CREATE INDEX IF NOT EXISTS document_embeddings_duplicate_of_idx
+    ON document_embeddings (duplicate_of) WHERE duplicate_of IS NOT NULL;
+
+-- Exact-match hashes for chunks stored before deduplication (same normalization as ChunkDeduplicator)
+UPDATE document_embeddings
+SET content_hash = encode(sha256(convert_to(lower(regexp_replace(btrim(chunk), '\s+', ' ', 'g')), 'UTF8')), 'hex')
+WHERE content_hash IS NULL AND chunk IS NOT NULL;
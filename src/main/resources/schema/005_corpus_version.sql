@@ -0,0 +1,7 @@
+-- Write counter: every committed change to the chunk table takes a new value, so search-result
+-- caches in any process can tell their entries are stale. A sequence rather than a counter row,
+-- so concurrent writers never queue on it
+CREATE SEQUENCE IF NOT EXISTS corpus_version_seq;
+
+-- Earlier versions kept the counter in a single-row table
+DROP TABLE IF EXISTS corpus_version;
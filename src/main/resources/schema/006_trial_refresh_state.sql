@@ -0,0 +1,10 @@
+-- Refresh scheduling state: when a trial's content last changed, when it was last checked
+-- (ingested or found unchanged) and how its recent attempts failed
+ALTER TABLE clinical_trials ADD COLUMN IF NOT EXISTS last_changed_at TIMESTAMP;
+ALTER TABLE clinical_trials ADD COLUMN IF NOT EXISTS last_checked_at TIMESTAMP;
+ALTER TABLE clinical_trials ADD COLUMN IF NOT EXISTS failure_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE clinical_trials ADD COLUMN IF NOT EXISTS last_failed_at TIMESTAMP;
+
+UPDATE clinical_trials
+SET last_checked_at = last_ingested_at
+WHERE last_checked_at IS NULL AND last_ingested_at IS NOT NULL;
@@ -0,0 +1,9 @@
+-- Trial-level vectors: the mean of each trial's chunk embeddings, the first tier of hierarchical search.
+-- The column takes any dimension count; the HNSW index over the configured dimensions is (re)built
+-- by the trial-vectors mode, since its expression has to match pipeline.embedding.dimensions.
+CREATE TABLE IF NOT EXISTS trial_vectors (
+    nct_id      VARCHAR(32) PRIMARY KEY REFERENCES clinical_trials (nct_id) ON DELETE CASCADE,
+    embedding   vector      NOT NULL,
+    chunk_count INTEGER     NOT NULL,
+    updated_at  TIMESTAMP   NOT NULL
+);
@@ -0,0 +1,47 @@
+package edu.mcw.scge.reader;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClinicalTrialExtractorTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"NCT05000001", "NCT05000002", "NCT05000003"})
+    void rendersTheSameTextAsTheSelectorExtractor(String nctId) throws IOException {
+        String html = fixture(nctId);
+
+        String expected = SelectorTrialExtractor.extract(Jsoup.parse(html));
+        ClinicalTrialExtractor extractor = ClinicalTrialExtractor.scan(Jsoup.parse(html));
+
+        assertTrue(extractor.hasTrialMarkup());
+        assertEquals(nctId, extractor.getNctId());
+        assertEquals(expected, extractor.getContent());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"NCT05000001", "NCT05000002", "NCT05000003"})
+    void leavesNoJunkForTheGenericFallback(String nctId) throws IOException {
+        Document scanned = Jsoup.parse(fixture(nctId));
+        ClinicalTrialExtractor.scan(scanned);
+
+        assertTrue(scanned.select("script, style, iframe, noscript, nav, footer, .navbar, #messageVue, .chat-popup").isEmpty());
+    }
+
+    static String fixture(String nctId) throws IOException {
+        try (InputStream in = ClinicalTrialExtractorTest.class.getResourceAsStream("/reports/" + nctId + ".html")) {
+            if (in == null) {
+                throw new IOException("Missing report fixture " + nctId);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
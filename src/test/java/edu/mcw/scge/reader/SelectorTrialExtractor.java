@@ -0,0 +1,140 @@
+package edu.mcw.scge.reader;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+/**
+ * The selector based clinical trial extractor that {@link ClinicalTrialExtractor} replaced, kept
+ * as the reference its output is compared against. Removes junk and the side navigation from the
+ * document it is given.
+ */
+final class SelectorTrialExtractor {
+
+    private SelectorTrialExtractor() {}
+
+    static String extract(Document doc) {
+        doc.select("script, style, iframe, noscript, nav, footer, .navbar, #messageVue, .chat-popup").remove();
+        return extractClinicalTrialContent(doc);
+    }
+
+    private static String extractClinicalTrialContent(Document doc) {
+        StringBuilder content = new StringBuilder();
+
+        // Remove navigation elements (but NOT form - data is inside form!)
+        doc.select(".sidenav").remove();
+
+        String nctId = extractNCTID(doc);
+        if (nctId != null) {
+            content.append("--- CLINICAL TRIAL: ").append(nctId).append(" ---\n\n");
+        }
+
+        Element mainHeading = doc.select("h2.brief-title").first();
+        if (mainHeading != null) {
+            String title = mainHeading.text().trim();
+            if (!title.isEmpty()) {
+                content.append("Title: ").append(title).append("\n\n");
+            }
+        }
+
+        Elements sections = doc.select("div.dynamic-heading");
+        for (Element sectionDiv : sections) {
+            Element sectionHeading = sectionDiv.select("h3.ctSubHeading").first();
+            if (sectionHeading != null) {
+                String sectionTitle = sectionHeading.text().trim();
+                if (!sectionTitle.isEmpty() && !sectionTitle.equalsIgnoreCase("Summary")) {
+                    content.append("\n=== ").append(sectionTitle).append(" ===\n");
+                }
+            }
+
+            // Find tables after this section
+            Element nextElement = sectionDiv.nextElementSibling();
+            while (nextElement != null) {
+                if (nextElement.hasClass("dynamic-heading")) {
+                    break;
+                }
+                if (nextElement.tagName().equals("table") && nextElement.hasClass("ctReportTable")) {
+                    content.append(extractTableData(nextElement));
+                }
+                nextElement = nextElement.nextElementSibling();
+            }
+        }
+
+        content.append(extractExternalLinks(doc));
+
+        return content.toString().trim();
+    }
+
+    private static String extractNCTID(Document doc) {
+        Elements rows = doc.select("table.ctReportTable tr");
+        for (Element row : rows) {
+            Elements cells = row.select("td");
+            if (cells.size() >= 2) {
+                String label = cells.get(0).text().trim();
+                if (label.equalsIgnoreCase("NCTID")) {
+                    String value = cells.get(1).text();
+                    return value.replaceAll("\\(.*?\\)", "").trim();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String extractTableData(Element table) {
+        StringBuilder tableContent = new StringBuilder();
+        Elements rows = table.select("tr");
+
+        for (Element row : rows) {
+            Elements cells = row.select("td");
+
+            if (cells.size() >= 2) {
+                String label = cells.get(0).text().trim();
+                String value = cells.get(1).text().trim();
+
+                // Clean up common junk from values
+                value = value.replaceAll("\\(View at.*?\\)", "").trim();
+                value = value.replaceAll("\\(Click here for.*?\\)", "").trim();
+
+                // Output EVERYTHING - even if value is empty
+                if (!label.isEmpty()) {
+                    tableContent.append(label).append(": ").append(value).append("\n");
+                }
+            }
+        }
+
+        return tableContent.toString();
+    }
+
+    private static String extractExternalLinks(Document doc) {
+        StringBuilder linksContent = new StringBuilder();
+        Elements linkHeadings = doc.select("h5.link-type-heading");
+
+        if (linkHeadings.isEmpty()) {
+            return "";
+        }
+
+        linksContent.append("\n=== Resources/Links ===\n");
+
+        for (Element heading : linkHeadings) {
+            String linkType = heading.text().trim();
+            if (!linkType.isEmpty()) {
+                linksContent.append("\n").append(linkType).append(":\n");
+
+                Element listElement = heading.nextElementSibling();
+                if (listElement != null && listElement.tagName().equals("ul")
+                        && listElement.hasClass("external-links-list")) {
+
+                    Elements listItems = listElement.select("li");
+                    for (Element li : listItems) {
+                        String itemText = li.text().trim();
+                        if (!itemText.isEmpty()) {
+                            linksContent.append("- ").append(itemText).append("\n");
+                        }
+                    }
+                }
+            }
+        }
+
+        return linksContent.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package edu.mcw.scge.repository;
+
+import edu.mcw.scge.reader.ClinicalTrialExtractor;
+import edu.mcw.scge.service.DocumentPreprocessor;
+import edu.mcw.scge.service.TrialRegistry;
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CurationReportRepositoryTest {
+
+    private static final String NCT_ID = "NCT05000001";
+
+    @Test
+    void rendersTheSameContentHashAsTheReportPage() throws IOException {
+        String page = ClinicalTrialExtractor.scan(Jsoup.parse(fixture(NCT_ID))).getContent();
+
+        // Rows as the views must return them for reports/NCT05000001.html: one per row the page shows,
+        // values as the template prints them, with markup, entities and stray whitespace as curated
+        CurationReportRepository.ReportRenderer renderer = new CurationReportRepository.ReportRenderer(List.of(NCT_ID));
+        renderer.trial(NCT_ID, "Gene Therapy for   Spinal Muscular Atrophy &amp; <i>SMN1</i> Deficiency\n");
+        renderer.field(NCT_ID, "Summary", "NCTID", "NCT05000001");
+        renderer.field(NCT_ID, "Summary", "Brief Summary", "An open-label study of <b>AAV9</b> delivered\n" +
+                "    intrathecally.<br>Participants are followed for 5&nbsp;years.");
+        renderer.field(NCT_ID, "Summary", "Status", "Recruiting");
+        renderer.field(NCT_ID, "Summary", "Collaborators", null);
+        renderer.field(NCT_ID, "Summary", "Sponsor", "Medical College of Wisconsin");
+        renderer.field(NCT_ID, "Summary", "Last Updated", "2024-03-01");
+        renderer.field(NCT_ID, " Interventions ", "Editor Type", "Gene replacement");
+        renderer.field(NCT_ID, " Interventions ", "Delivery System", "AAV9");
+        renderer.field(NCT_ID, " Interventions ", "Route", "Intrathecal");
+        renderer.field(NCT_ID, "Study Design", "Phase", "Phase 1/Phase 2");
+        renderer.field(NCT_ID, "Study Design", "Enrollment", "24   (estimated)");
+        renderer.field(NCT_ID, "Outcomes", "Primary Outcome", "Safety and\r\n\ttolerability at 12 months");
+        renderer.link(NCT_ID, "Publications", "Intrathecal AAV9 in SMA (2021)");
+        renderer.link(NCT_ID, "Publications", "Follow-up report, <i>Mol Ther</i> 2023");
+        renderer.link(NCT_ID, "Press Releases", null);
+        renderer.link(NCT_ID, "Registries", null);
+        String database = renderer.getContent().get(NCT_ID);
+
+        assertEquals(page, database);
+        assertEquals(contentHash(page), contentHash(database));
+    }
+
+    @Test
+    void readsValuesTheWayThePageExtractorDoes() {
+        for (String value : List.of("a &amp; b", "  x\u00A0 y\n", "<p>one</p><p>two</p>", "&lt;10 years", "plain")) {
+            String page = Jsoup.parse("<table><tr><td>" + value + "</td></tr></table>").selectFirst("td").text().trim();
+            assertEquals(page, CurationReportRepository.pageText(value), value);
+        }
+        assertEquals("", CurationReportRepository.pageText(null));
+    }
+
+    // Hash of the preprocessed report, as UrlController compares it for change detection
+    private static String contentHash(String content) {
+        List<Document> preprocessed = new DocumentPreprocessor().preprocessDocuments(List.of(new Document(content, Map.of("filename", NCT_ID))));
+        return TrialRegistry.contentHash(preprocessed.stream()
+                .map(Document::getContent)
+                .collect(Collectors.joining("\n")));
+    }
+
+    private static String fixture(String nctId) throws IOException {
+        try (InputStream in = CurationReportRepositoryTest.class.getResourceAsStream("/reports/" + nctId + ".html")) {
+            if (in == null) {
+                throw new IOException("Missing report fixture " + nctId);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}